@@ -11,13 +11,20 @@ import com.bitwig.extension.controller.api.HardwareButton;
 import com.bitwig.extension.controller.api.HardwareControlType;
 import com.bitwig.extension.controller.api.HardwareSlider;
 import com.bitwig.extension.controller.api.NoteInput;
+import com.bitwig.extension.controller.api.NoteStep;
+import com.bitwig.extension.controller.api.PinnableCursorClip;
 import com.bitwig.extension.controller.api.PinnableCursorDevice;
 import com.bitwig.extension.controller.api.RemoteControl;
 import com.bitwig.extension.controller.api.RemoteControlsPage;
 import com.bitwig.extension.controller.api.SettableBooleanValue;
+import com.bitwig.extension.controller.api.Transport;
 import com.bitwig.extensions.controllers.novation.launch_control_xl.LaunchControlXlControllerExtension.TrackControl;
 import com.bitwig.extensions.controllers.novation.launch_control_xl.drum.DrumMapping;
+import com.bitwig.extensions.controllers.novation.launch_control_xl.drum.DrumStepCache;
+import com.bitwig.extensions.controllers.novation.launch_control_xl.drum.NoteRepeat;
+import com.bitwig.extensions.controllers.novation.launch_control_xl.drum.PadActivity;
 import com.bitwig.extensions.framework.Layer;
+import com.bitwig.extensions.framework.time.TimingWheel;
 
 /**
  * Implements the Launch Control XL drum user layer (template 7).
@@ -25,16 +32,51 @@ import com.bitwig.extensions.framework.Layer;
  * Handles binding of hardware controls to drum pads (sliders -> pad volumes, knobs -> per-pad remote
  * controls, buttons -> triggers/mutes/solo) and provides a mute/solo mode that mirrors the hardware
  * Track Control buttons.
+ * <p>
+ * The pads are observed through {@link #PAD_WINDOWS} pad banks: the visible page of 8 pads and its
+ * neighbours on either side, each with its own per-pad remote pages and a layer binding the sliders and
+ * knobs. Scrolling to a neighbour makes its window the visible one, so the LEDs repaint from values that
+ * are already there; the windows then re-center around the new page in the background.
+ * <p>
+ * Step mode (Record Arm) turns the 16 buttons into 16 steps of the selected pad in the cursor clip. The
+ * clip observes one row of steps, scrolled to the pad's key; its notes are mirrored in a {@link DrumStepCache}
+ * from the step observers, so painting a page reads bits instead of querying steps.
+ * <p>
+ * Repeat mode (Device) turns the bottom buttons into note repeat rates: holding one repeats the selected pad
+ * on the transport grid, see {@link NoteRepeat}.
+ * <p>
+ * Notes played by the pads light their top-row LEDs. A note only bumps the pad's {@link PadActivity} level;
+ * the LEDs change on a {@value #ACTIVITY_TICK_MS} ms tick, so their traffic does not grow with the pattern.
+ * <p>
+ * Audition note-offs, the activity tick and the note repeat all run on the extension's {@link TimingWheel}.
  */
 final class DrumLayerController
 {
    static final int PADS_PER_BANK = 8;
+   /** The visible pad page plus the previous and next page. */
+   static final int PAD_WINDOWS = 3;
+   /** Step mode edits 16th notes. */
+   private static final double STEP_LENGTH = 0.25;
+   private static final int STEP_VELOCITY = 100;
+   private static final int REPEAT_VELOCITY = 100;
+   /** Pad activity LEDs update at about 30 Hz. */
+   private static final int ACTIVITY_TICK_MS = 33;
+   static final int DEFAULT_AUDITION_LENGTH_MS = 100;
    private static final boolean DEBUG_DRUM = true;
 
    private final ControllerHost host;
-   private final DrumPadBank padBank;
+   private final TimingWheel wheel;
+   private final DrumPadBank[] padBanks;
    private final PinnableCursorDevice cursorDevice;
-   private final RemoteControlsPage[] padRemoteControls;
+   private final PinnableCursorClip clip;
+   private final Transport transport;
+   private final NoteRepeat noteRepeat;
+   private final PadActivity activity = new PadActivity(PAD_WINDOWS * PADS_PER_BANK);
+   /** Repeating activity tick, while a pad LED is lit. */
+   private TimingWheel.Task activityTask;
+   private final DrumStepCache steps = new DrumStepCache();
+   private final RemoteControlsPage[][] padRemoteControls = new RemoteControlsPage[PAD_WINDOWS][PADS_PER_BANK];
+   private final Layer[] padLayers = new Layer[PAD_WINDOWS];
    private final NoteInput noteInput;
    private final int midiChannel;
    private final Layer layer;
@@ -46,18 +88,38 @@ final class DrumLayerController
    private final HardwareButton trackRight;
    private boolean auditionOnSelect;
    private boolean accentMomentary;
+   private int auditionLengthMs = DEFAULT_AUDITION_LENGTH_MS;
+
+   // Auditioned notes waiting for their note-off, by MIDI key. Releasing or retriggering a note cancels its
+   // scheduled note-off.
+   private final boolean[] sounding = new boolean[128];
+   private final TimingWheel.Task[] noteOffs = new TimingWheel.Task[128];
+   private final long[] noteOnNanos = new long[128];
+   private double maxNoteOffJitterMs;
 
    private boolean soloMode;
    private boolean activeRequested;
    private TrackControl trackControlMode = TrackControl.None;
    private int selectedPadIndex = -1;
+   private int visibleWindow;
+   private Layer stepLayer;
+   private boolean stepMode;
+   private int stepKey = -1;
+   private int stepPage;
+   /** Half of the step page (steps 1–8 or 9–16) the knobs edit in step mode; follows the last step pressed. */
+   private int stepHalf;
+   private boolean repeatMode;
+   /** Bottom button whose rate is repeating, or -1. */
+   private int repeatButton = -1;
 
    DrumLayerController(final ControllerHost host,
+                       final TimingWheel wheel,
                        final NoteInput noteInput,
                        final int midiChannel,
-                       final DrumPadBank padBank,
+                       final DrumPadBank[] padBanks,
                        final PinnableCursorDevice cursorDevice,
-                       final RemoteControlsPage[] padRemoteControls,
+                       final PinnableCursorClip clip,
+                       final Transport transport,
                        final Layer layer,
                        final HardwareSlider[] faders,
                        final AbsoluteHardwareKnob[][] knobs,
@@ -69,9 +131,25 @@ final class DrumLayerController
                        final boolean accentMomentary)
    {
       this.host = host;
-      this.padBank = padBank;
+      this.wheel = wheel;
+      this.padBanks = padBanks;
       this.cursorDevice = cursorDevice;
-      this.padRemoteControls = padRemoteControls;
+      this.clip = clip;
+      this.transport = transport;
+      this.noteRepeat = new NoteRepeat(wheel::schedule, System::nanoTime, new NoteRepeat.Output()
+      {
+         @Override
+         public void noteOn(final int key, final int velocity)
+         {
+            noteInput.sendRawMidiEvent(0x90 + midiChannel, key, velocity);
+         }
+
+         @Override
+         public void noteOff(final int key)
+         {
+            noteInput.sendRawMidiEvent(0x80 + midiChannel, key, 0);
+         }
+      });
       this.noteInput = noteInput;
       this.midiChannel = midiChannel;
       this.layer = layer;
@@ -99,8 +177,8 @@ final class DrumLayerController
             {
                host.showPopupNotification("Select a Drum Machine");
             }
-            padBank.setIndication(false);
-            layer.setIsActive(false);
+            padBank().setIndication(false);
+            setLayersActive(false);
          }
          else if (activeRequested)
          {
@@ -108,24 +186,75 @@ final class DrumLayerController
          }
       });
 
-      padBank.setChannelScrollStepSize(PADS_PER_BANK);
-      padBank.canScrollBackwards().markInterested();
-      padBank.canScrollForwards().markInterested();
-      padBank.scrollPosition().markInterested();
+      for (int window = 0; window < PAD_WINDOWS; window++)
+      {
+         initPadWindow(window);
+      }
+      for (int i = 0; i < PADS_PER_BANK; i++)
+      {
+         final int index = i;
+         layer.bindPressed(topButtons[index], () -> {
+            if (stepMode)
+            {
+               toggleStep(index);
+               return;
+            }
+            selectedPadIndex = index;
+            getPad(index).selectInEditor();
+            if (auditionOnSelect)
+               playPad(index, 100);
+         });
+         layer.bindPressed(bottomButtons[index], () -> handleBottomButton(index));
+         layer.bindReleased(bottomButtons[index], () -> releaseBottomButton(index));
+         log("Pad " + index + " bindings installed");
+      }
 
-      forEachPad((index, pad) -> {
+      layer.bindPressed(trackLeft, () -> {
+         scrollLeftRight(-1);
+         log("Pad bank scroll left");
+      });
+      layer.bindPressed(trackRight, () -> {
+         scrollLeftRight(1);
+         log("Pad bank scroll right");
+      });
+      initStepMode();
+      transport.tempo().value().addRawValueObserver(noteRepeat::setTempo);
+      transport.isPlaying().addValueObserver(noteRepeat::setPlaying);
+      transport.playPosition().addValueObserver(noteRepeat::syncPosition);
+      log("Drum layer init complete");
+   }
+
+   /** Observe the pads of one window and bind the sliders and knobs to them in the window's own layer. */
+   private void initPadWindow(final int window)
+   {
+      final DrumPadBank bank = padBanks[window];
+      final Layer padLayer = new Layer(layer.getLayers(), layer.getName() + " pads " + (window + 1));
+      padLayers[window] = padLayer;
+      bank.setChannelScrollStepSize(PADS_PER_BANK);
+      bank.canScrollBackwards().markInterested();
+      bank.canScrollForwards().markInterested();
+      bank.scrollPosition().markInterested();
+
+      for (int index = 0; index < PADS_PER_BANK; index++)
+      {
+         final DrumPad pad = bank.getItemAt(index);
          pad.exists().markInterested();
          pad.mute().markInterested();
          pad.solo().markInterested();
          pad.volume().markInterested();
          pad.channelIndex().markInterested();
+         final int activityIndex = window * PADS_PER_BANK + index;
+         pad.addNoteObserver((isNoteOn, key, velocity) -> {
+            if (isNoteOn)
+               onPadNote(activityIndex);
+         });
 
          final DeviceBank deviceBank = pad.createDeviceBank(1);
          final Device primaryDevice = deviceBank.getItemAt(0);
          primaryDevice.exists().markInterested();
 
          final CursorRemoteControlsPage rc = primaryDevice.createCursorRemoteControlsPage(4);
-         padRemoteControls[index] = rc;
+         padRemoteControls[window][index] = rc;
 
          rc.setHardwareLayout(HardwareControlType.KNOB, 3);
          for (int p = 0; p < 4; p++)
@@ -135,31 +264,326 @@ final class DrumLayerController
             rc.getParameter(p).exists().markInterested();
          }
 
-         layer.bind(faders[index], pad.volume());
-         layer.bind(knobs[0][index], rc.getParameter(0));
-         layer.bind(knobs[1][index], rc.getParameter(1));
-         layer.bind(knobs[2][index], rc.getParameter(2));
-         layer.bindPressed(topButtons[index], () -> {
-            selectedPadIndex = index;
-            pad.selectInEditor();
-            if (auditionOnSelect)
-               playPad(pad, index, 100);
-         });
-         final int buttonIndex = index;
-         layer.bindPressed(bottomButtons[index], () -> handleBottomButton(buttonIndex));
-         layer.bindReleased(bottomButtons[index], () -> releaseBottomButton(buttonIndex));
-         log("Pad " + index + " bindings installed");
-      });
+         padLayer.bind(faders[index], pad.volume());
+         padLayer.bind(knobs[0][index], rc.getParameter(0));
+         padLayer.bind(knobs[1][index], rc.getParameter(1));
+         padLayer.bind(knobs[2][index], rc.getParameter(2));
+      }
+   }
 
-      layer.bindPressed(trackLeft, () -> {
-         padBank.scrollBy(-PADS_PER_BANK);
-         log("Pad bank scroll left");
-      });
-      layer.bindPressed(trackRight, () -> {
-         padBank.scrollBy(PADS_PER_BANK);
-         log("Pad bank scroll right");
+   /**
+    * Observe the steps of the cursor clip and bind the knobs to the expressions of the steps in step mode. The
+    * step layer is created after the pad layers, so its knob bindings win while it is active.
+    */
+   private void initStepMode()
+   {
+      clip.setStepSize(STEP_LENGTH);
+      clip.scrollToKey(0);
+      clip.scrollToStep(0);
+      clip.playingStep().markInterested();
+      // The clip window is one row high, so y is always 0: the row of the step key.
+      clip.addStepDataObserver((x, y, state) -> {
+         steps.setStepState(x, state);
+         if (stepMode)
+            host.requestFlush();
       });
-      log("Drum layer init complete");
+      clip.addNoteStepObserver(step -> steps.setVelocity(step.x(), step.velocity()));
+
+      stepLayer = new Layer(layer.getLayers(), layer.getName() + " steps");
+      for (int row = 0; row < 3; row++)
+      {
+         for (int col = 0; col < PADS_PER_BANK; col++)
+         {
+            final int expression = row;
+            final int column = col;
+            stepLayer.bind(knobs[row][col], value -> setStepExpression(expression, column, value));
+         }
+      }
+   }
+
+   /** Toggle step mode for the selected pad (the first pad of the page when none is selected). */
+   void toggleStepMode()
+   {
+      stepMode = !stepMode;
+      if (stepMode)
+      {
+         setRepeatMode(false);
+         stepKey = padBank().scrollPosition().get() + Math.max(0, selectedPadIndex);
+         stepHalf = 0;
+         clip.scrollToKey(stepKey);
+      }
+      stepLayer.setIsActive(stepMode && layer.isActive());
+      host.showPopupNotification(stepMode
+         ? "Drum layer: Steps of pad " + (Math.max(0, selectedPadIndex) + 1)
+         : "Drum layer: Default buttons");
+      log("Step mode toggled -> " + stepMode + " key=" + stepKey);
+   }
+
+   boolean isStepMode()
+   {
+      return stepMode;
+   }
+
+   /** @return the 16 steps of the visible step page as bits, bit 0 being the first step */
+   int getStepBits()
+   {
+      return steps.getPage(stepPage);
+   }
+
+   /** @return velocity 0–127 of step {@code index} of the visible step page, 0 if it is empty */
+   int getStepVelocity(final int index)
+   {
+      return steps.getVelocity(stepPage * DrumStepCache.PAGE_STEPS + index);
+   }
+
+   /** @return index of the playing step within the visible step page, or -1 */
+   int getPlayingStepIndex()
+   {
+      final int index = clip.playingStep().get() - stepPage * DrumStepCache.PAGE_STEPS;
+      return index >= 0 && index < DrumStepCache.PAGE_STEPS ? index : -1;
+   }
+
+   /** @return the first step index (0 or 8 within the page) the knobs edit */
+   int getStepKnobOffset()
+   {
+      return stepHalf * PADS_PER_BANK;
+   }
+
+   boolean canScrollLeft()
+   {
+      return stepMode ? stepPage > 0 : canScrollBackwards();
+   }
+
+   boolean canScrollRight()
+   {
+      return stepMode ? stepPage + 1 < DrumStepCache.PAGES : canScrollForwards();
+   }
+
+   private void scrollLeftRight(final int direction)
+   {
+      if (!stepMode)
+      {
+         scrollPads(direction);
+         return;
+      }
+      final int page = stepPage + direction;
+      if (page < 0 || page >= DrumStepCache.PAGES)
+         return;
+      stepPage = page;
+      host.showPopupNotification("Drum steps " + (page * DrumStepCache.PAGE_STEPS + 1) + "–"
+         + (page + 1) * DrumStepCache.PAGE_STEPS);
+      host.requestFlush();
+   }
+
+   private void toggleStep(final int index)
+   {
+      final int x = stepPage * DrumStepCache.PAGE_STEPS + index;
+      clip.toggleStep(x, 0, STEP_VELOCITY);
+      stepHalf = index / PADS_PER_BANK;
+      log("Toggle step " + x + " key=" + stepKey);
+   }
+
+   /** Knob rows set velocity, timbre (e.g. mapped to a filter cutoff) and pan of the steps. */
+   private void setStepExpression(final int expression, final int column, final double value)
+   {
+      final int x = stepPage * DrumStepCache.PAGE_STEPS + stepHalf * PADS_PER_BANK + column;
+      if (!steps.isSet(x))
+         return;
+      final NoteStep step = clip.getStep(0, x, 0);
+      switch (expression)
+      {
+         case 0 -> step.setVelocity(value);
+         case 1 -> step.setTimbre(value * 2 - 1);
+         default -> step.setPan(value * 2 - 1);
+      }
+   }
+
+   /** Toggle repeat mode: the bottom buttons repeat the selected pad while held. */
+   void toggleRepeatMode()
+   {
+      setRepeatMode(!repeatMode);
+      if (repeatMode && stepMode)
+      {
+         stepMode = false;
+         stepLayer.setIsActive(false);
+      }
+      host.showPopupNotification(repeatMode ? "Drum layer: Note repeat" : "Drum layer: Default buttons");
+      log("Repeat mode toggled -> " + repeatMode);
+   }
+
+   boolean isRepeatMode()
+   {
+      return repeatMode;
+   }
+
+   /** @return the bottom button whose rate is repeating, or -1 */
+   int getRepeatButton()
+   {
+      return repeatButton;
+   }
+
+   private void setRepeatMode(final boolean enable)
+   {
+      repeatMode = enable;
+      if (!enable)
+         stopRepeat();
+   }
+
+   private void startRepeat(final int index)
+   {
+      if (noteInput == null)
+         return;
+      final int key = padBank().scrollPosition().get() + Math.max(0, selectedPadIndex);
+      if (key < 0 || key > 127)
+         return;
+      repeatButton = index;
+      noteRepeat.start(key, REPEAT_VELOCITY, NoteRepeat.RATES[index]);
+      host.requestFlush();
+      log("Repeat " + NoteRepeat.RATE_NAMES[index] + " key=" + key);
+   }
+
+   private void stopRepeat()
+   {
+      repeatButton = -1;
+      noteRepeat.stop();
+   }
+
+   /** @return {@link PadActivity#OFF}, {@link PadActivity#DIM} or {@link PadActivity#BRIGHT} for a visible pad */
+   int getPadActivity(final int padIndex)
+   {
+      return activity.getStage(visibleWindow * PADS_PER_BANK + padIndex);
+   }
+
+   private void onPadNote(final int index)
+   {
+      if (!layer.isActive())
+         return;
+      activity.trigger(index);
+      if (activityTask == null)
+         activityTask = wheel.scheduleRepeating(this::tickActivity, ACTIVITY_TICK_MS, ACTIVITY_TICK_MS);
+   }
+
+   /** Runs while a pad LED is lit; one flush per tick at most, however many notes were played. */
+   private void tickActivity()
+   {
+      if (activity.tick())
+         host.requestFlush();
+      if (!activity.isActive())
+      {
+         wheel.cancel(activityTask);
+         activityTask = null;
+      }
+   }
+
+   private DrumPadBank padBank()
+   {
+      return padBanks[visibleWindow];
+   }
+
+   /** @return pad {@code index} of the visible page */
+   DrumPad getPad(final int index)
+   {
+      return padBank().getItemAt(index);
+   }
+
+   /** @return remote controls of pad {@code index} of the visible page */
+   RemoteControlsPage getPadRemoteControls(final int index)
+   {
+      return padRemoteControls[visibleWindow][index];
+   }
+
+   boolean canScrollBackwards()
+   {
+      return padBank().canScrollBackwards().get();
+   }
+
+   boolean canScrollForwards()
+   {
+      return padBank().canScrollForwards().get();
+   }
+
+   /**
+    * Show the previous (-1) or next (1) page of pads. When a prefetch window already sits on that page it
+    * becomes the visible one; otherwise the visible bank scrolls and its values follow from the host.
+    */
+   private void scrollPads(final int direction)
+   {
+      if (direction < 0 ? !canScrollBackwards() : !canScrollForwards())
+      {
+         return;
+      }
+      final int target = padBank().scrollPosition().get() + direction * PADS_PER_BANK;
+      int window = -1;
+      for (int i = 0; i < PAD_WINDOWS; i++)
+      {
+         if (i != visibleWindow && padBanks[i].scrollPosition().get() == target)
+         {
+            window = i;
+         }
+      }
+      if (window >= 0)
+      {
+         showWindow(window);
+      }
+      else
+      {
+         padBank().scrollBy(direction * PADS_PER_BANK);
+      }
+      recenterWindows(target);
+      host.requestFlush();
+   }
+
+   private void showWindow(final int window)
+   {
+      final boolean active = layer.isActive();
+      padLayers[visibleWindow].setIsActive(false);
+      padBanks[visibleWindow].setIndication(false);
+      visibleWindow = window;
+      padLayers[visibleWindow].setIsActive(active);
+      padBanks[visibleWindow].setIndication(active);
+   }
+
+   /** Move the hidden windows to the pages before and after {@code position}. */
+   private void recenterWindows(final int position)
+   {
+      final int previous = position - PADS_PER_BANK;
+      final int next = position + PADS_PER_BANK;
+      boolean hasPrevious = previous < 0;
+      boolean hasNext = false;
+      final int[] spare = new int[PAD_WINDOWS];
+      int spareCount = 0;
+      for (int i = 0; i < PAD_WINDOWS; i++)
+      {
+         if (i == visibleWindow)
+            continue;
+         final int windowPosition = padBanks[i].scrollPosition().get();
+         if (!hasPrevious && windowPosition == previous)
+            hasPrevious = true;
+         else if (!hasNext && windowPosition == next)
+            hasNext = true;
+         else
+            spare[spareCount++] = i;
+      }
+      for (int i = 0; i < spareCount; i++)
+      {
+         if (!hasNext)
+         {
+            padBanks[spare[i]].scrollPosition().set(next);
+            hasNext = true;
+         }
+         else if (!hasPrevious)
+         {
+            padBanks[spare[i]].scrollPosition().set(previous);
+            hasPrevious = true;
+         }
+      }
+   }
+
+   private void setLayersActive(final boolean active)
+   {
+      layer.setIsActive(active);
+      padLayers[visibleWindow].setIsActive(active);
+      stepLayer.setIsActive(active && stepMode);
    }
 
    /**
@@ -172,14 +596,15 @@ final class DrumLayerController
       if (!cursorDevice.hasDrumPads().get())
       {
          host.showPopupNotification("Select a Drum Machine");
-         layer.setIsActive(false);
-         padBank.setIndication(false);
+         setLayersActive(false);
+         padBank().setIndication(false);
          log("Engage aborted: no drum pads on cursor device");
          return;
       }
 
-      padBank.setIndication(true);
-      layer.setIsActive(true);
+      padBank().setIndication(true);
+      setLayersActive(true);
+      recenterWindows(padBank().scrollPosition().get());
       host.showPopupNotification("Drum layer engaged (User Template 7)");
       log("Drum layer engaged: channel=" + midiChannel);
    }
@@ -187,12 +612,16 @@ final class DrumLayerController
    /** Deactivate the layer and reset mode state (solo/mute). */
    void disengage()
    {
+      releaseAuditionedNotes();
+      setRepeatMode(false);
+      activity.clear();
       activeRequested = false;
       soloMode = false;
+      stepMode = false;
       trackControlMode = TrackControl.None;
       selectedPadIndex = -1;
-      padBank.setIndication(false);
-      layer.setIsActive(false);
+      padBank().setIndication(false);
+      setLayersActive(false);
       log("Drum layer disengaged");
    }
 
@@ -211,7 +640,7 @@ final class DrumLayerController
       return soloMode;
    }
 
-   private void playPad(final DrumPad pad, final int padIndex, final int velocity)
+   private void playPad(final int padIndex, final int velocity)
    {
       if (noteInput == null)
       {
@@ -220,18 +649,69 @@ final class DrumLayerController
       }
       // Derive the outgoing note purely from the current pad bank position and the pad index so it
       // stays consistent across pages (C1 upward).
-      final int bankOffset = padBank.scrollPosition().get();
+      final int bankOffset = padBank().scrollPosition().get();
       final int key = bankOffset + padIndex;
       final int appliedVelocity = velocity > 0 ? 100 : 0;
-      final int statusOn = 0x90 + midiChannel;
-      final int statusOff = 0x80 + midiChannel;
       log("bankOffset=" + bankOffset + " padIndex=" + padIndex);
-      log("playPad send status=" + statusOn + " key=" + key + " vel=" + appliedVelocity);
-      if (appliedVelocity > 0)
+      log("playPad send status=" + (0x90 + midiChannel) + " key=" + key + " vel=" + appliedVelocity);
+      if (key < 0 || key > 127)
+      {
+         return;
+      }
+      if (sounding[key])
+      {
+         releaseNote(key);
+      }
+      if (appliedVelocity == 0)
       {
-         noteInput.sendRawMidiEvent(statusOn, key, appliedVelocity);
+         return;
+      }
+      noteInput.sendRawMidiEvent(0x90 + midiChannel, key, appliedVelocity);
+      if (auditionLengthMs <= 0)
+      {
+         noteInput.sendRawMidiEvent(0x80 + midiChannel, key, 0);
+         return;
+      }
+      // The note-off is keyed by the MIDI note, so a bank scroll before it fires still releases the right key.
+      sounding[key] = true;
+      noteOnNanos[key] = System.nanoTime();
+      noteOffs[key] = wheel.schedule(() -> releaseScheduledNote(key), auditionLengthMs);
+   }
+
+   private void releaseScheduledNote(final int key)
+   {
+      noteOffs[key] = null;
+      final double jitterMs = (System.nanoTime() - noteOnNanos[key]) / 1_000_000.0 - auditionLengthMs;
+      maxNoteOffJitterMs = Math.max(maxNoteOffJitterMs, jitterMs);
+      releaseNote(key);
+      log("Audition note-off key=%d jitter=%.1f ms (max %.1f ms)".formatted(key, jitterMs, maxNoteOffJitterMs));
+   }
+
+   private void releaseNote(final int key)
+   {
+      sounding[key] = false;
+      if (noteOffs[key] != null)
+      {
+         wheel.cancel(noteOffs[key]);
+         noteOffs[key] = null;
+      }
+      noteInput.sendRawMidiEvent(0x80 + midiChannel, key, 0);
+   }
+
+   /** Send the note-off of every auditioned note that is still sounding. */
+   private void releaseAuditionedNotes()
+   {
+      if (noteInput == null)
+      {
+         return;
+      }
+      for (int key = 0; key < sounding.length; key++)
+      {
+         if (sounding[key])
+         {
+            releaseNote(key);
+         }
       }
-      noteInput.sendRawMidiEvent(statusOff, key, 0);
    }
 
    /** Toggle the current mute/solo target for the given pad. */
@@ -266,7 +746,7 @@ final class DrumLayerController
          final int sliderIndex = indexOf(DrumMapping.SLIDER_CCS, data1);
          if (sliderIndex >= 0)
          {
-            final DrumPad pad = padBank.getItemAt(sliderIndex);
+            final DrumPad pad = getPad(sliderIndex);
             pad.volume().set(data2, 127);
             log("Slider " + sliderIndex + " -> pad volume " + data2);
             return true;
@@ -290,14 +770,18 @@ final class DrumLayerController
             return true;
          }
          final int topIndex = indexOf(DrumMapping.TOP_NOTES, data1);
+         if (topIndex >= 0 && data2 > 0 && stepMode)
+         {
+            toggleStep(topIndex);
+            return true;
+         }
          if (topIndex >= 0 && data2 > 0)
          {
-            final DrumPad pad = padBank.getItemAt(topIndex);
             selectedPadIndex = topIndex;
-            pad.selectInEditor();
+            getPad(topIndex).selectInEditor();
             if (auditionOnSelect)
             {
-               playPad(pad, topIndex, 100);
+               playPad(topIndex, 100);
                log("Select+trigger pad " + topIndex + " (CC)");
             }
             else
@@ -308,13 +792,13 @@ final class DrumLayerController
          }
          if (data1 == DrumMapping.TRACK_LEFT_CC && data2 > 0)
          {
-            padBank.scrollBy(-PADS_PER_BANK);
+            scrollLeftRight(-1);
             log("Pad bank scroll left (MIDI)");
             return true;
          }
          if (data1 == DrumMapping.TRACK_RIGHT_CC && data2 > 0)
          {
-            padBank.scrollBy(PADS_PER_BANK);
+            scrollLeftRight(1);
             log("Pad bank scroll right (MIDI)");
             return true;
          }
@@ -327,14 +811,18 @@ final class DrumLayerController
       else if (message == 0x90 || message == 0x80) // note on/off
       {
          final int topIndex = indexOf(DrumMapping.TOP_NOTES, data1);
+         if (topIndex >= 0 && data2 > 0 && stepMode)
+         {
+            toggleStep(topIndex);
+            return true;
+         }
          if (topIndex >= 0 && data2 > 0)
          {
-            final DrumPad pad = padBank.getItemAt(topIndex);
             selectedPadIndex = topIndex;
-            pad.selectInEditor();
+            getPad(topIndex).selectInEditor();
             if (auditionOnSelect)
             {
-               playPad(pad, topIndex, 100);
+               playPad(topIndex, 100);
                log("Select+trigger pad " + topIndex + " (note)");
             }
             else
@@ -357,20 +845,6 @@ final class DrumLayerController
       return false;
    }
 
-   private void forEachPad(final PadConsumer consumer)
-   {
-      for (int i = 0; i < PADS_PER_BANK; i++)
-      {
-         consumer.accept(i, padBank.getItemAt(i));
-      }
-   }
-
-   @FunctionalInterface
-   private interface PadConsumer
-   {
-      void accept(int index, DrumPad pad);
-   }
-
    private static int indexOf(final int[] values, final int value)
    {
       for (int i = 0; i < values.length; i++)
@@ -385,7 +859,13 @@ final class DrumLayerController
 
    private void setKnobValue(final int padIndex, final int parameterIndex, final int midiValue)
    {
-      final RemoteControlsPage rc = padRemoteControls[padIndex];
+      if (stepMode)
+      {
+         // As with the step layer's bindings, the knobs edit the steps rather than the pads.
+         setStepExpression(parameterIndex, padIndex, midiValue / 127.0);
+         return;
+      }
+      final RemoteControlsPage rc = getPadRemoteControls(padIndex);
       if (rc == null)
       {
          return;
@@ -401,9 +881,19 @@ final class DrumLayerController
     */
    private void handleBottomButton(final int padIndex)
    {
+      if (stepMode)
+      {
+         toggleStep(PADS_PER_BANK + padIndex);
+         return;
+      }
+      if (repeatMode)
+      {
+         startRepeat(padIndex);
+         return;
+      }
       if (soloMode || trackControlMode == TrackControl.Mute)
       {
-         final DrumPad pad = padBank.getItemAt(padIndex);
+         final DrumPad pad = getPad(padIndex);
          if (pad.exists().get())
             toggleMuteOrSolo(pad);
       }
@@ -418,14 +908,20 @@ final class DrumLayerController
 
    private void releaseBottomButton(final int padIndex)
    {
-      if (soloMode || trackControlMode == TrackControl.Mute || !accentMomentary)
+      if (repeatMode && padIndex == repeatButton)
+      {
+         stopRepeat();
+         host.requestFlush();
+         return;
+      }
+      if (stepMode || repeatMode || soloMode || trackControlMode == TrackControl.Mute || !accentMomentary)
          return;
       setPadAccent(padIndex, false);
    }
 
    private void setPadAccent(final int padIndex, final boolean enable)
    {
-      final RemoteControlsPage rc = padRemoteControls[padIndex];
+      final RemoteControlsPage rc = getPadRemoteControls(padIndex);
       if (rc == null)
          return;
       final RemoteControl param = rc.getParameter(3);
@@ -438,7 +934,7 @@ final class DrumLayerController
 
    private void togglePadAccent(final int padIndex)
    {
-      final RemoteControlsPage rc = padRemoteControls[padIndex];
+      final RemoteControlsPage rc = getPadRemoteControls(padIndex);
       if (rc == null)
          return;
       final RemoteControl param = rc.getParameter(3);
@@ -476,6 +972,12 @@ final class DrumLayerController
       this.accentMomentary = accentMomentary;
    }
 
+   /** @param lengthMs time between an auditioned pad's note-on and note-off; 0 sends both at once */
+   void setAuditionLength(final int lengthMs)
+   {
+      this.auditionLengthMs = Math.max(0, lengthMs);
+   }
+
    private void triggerMacro(final int macroIndex)
    {
       // Placeholder for future macro routing; currently consumes the event without external action.
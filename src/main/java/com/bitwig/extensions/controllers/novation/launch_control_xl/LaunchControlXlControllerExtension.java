@@ -19,26 +19,36 @@ import com.bitwig.extension.controller.api.CursorTrack;
 import com.bitwig.extension.controller.api.HardwareControlType;
 import com.bitwig.extension.controller.api.MidiIn;
 import com.bitwig.extension.controller.api.MidiOut;
+import com.bitwig.extension.controller.api.PinnableCursorClip;
 import com.bitwig.extension.controller.api.PinnableCursorDevice;
 import com.bitwig.extension.controller.api.RemoteControl;
 import com.bitwig.extension.controller.api.RemoteControlsPage;
 import com.bitwig.extension.controller.api.SendBank;
 import com.bitwig.extension.controller.api.SettableBooleanValue;
+import com.bitwig.extension.controller.api.SettableRangedValue;
+import com.bitwig.extension.controller.api.SettableEnumValue;
 import com.bitwig.extension.controller.api.Track;
+import com.bitwig.extension.controller.api.Transport;
 import com.bitwig.extension.controller.api.TrackBank;
 import com.bitwig.extensions.controllers.novation.launch_control_xl.drum.DrumMapping;
+import com.bitwig.extensions.controllers.novation.launch_control_xl.drum.DrumStepCache;
+import com.bitwig.extensions.controllers.novation.launch_control_xl.drum.PadActivity;
 import com.bitwig.extensions.controllers.novation.launch_control_xl.support.DeviceLocator;
+import com.bitwig.extensions.controllers.novation.launch_control_xl.support.DeviceLocator.FocusRequest;
 import com.bitwig.extensions.controllers.novation.launch_control_xl.support.DeviceLocator.FocusResult;
 import com.bitwig.extensions.controllers.novation.launch_control_xl.support.DeviceLocator.Role;
+import com.bitwig.extensions.controllers.novation.launch_control_xl.support.DeviceLocator.ScanMode;
 import com.bitwig.extensions.controllers.novation.launch_control_xl.support.TemplateChangeMessageParser;
 import com.bitwig.extensions.controllers.novation.launch_control_xl.support.HostNotifications;
 import com.bitwig.extensions.controllers.novation.launch_control_xl.support.UserModeNoteInputInstaller;
 import com.bitwig.extensions.rh.Midi;
 import com.bitwig.extensions.framework.Layer;
 import com.bitwig.extensions.framework.Layers;
+import com.bitwig.extensions.framework.time.TimingWheel;
 
 import java.util.Optional;
 import java.util.OptionalInt;
+import java.util.function.Consumer;
 
 /**
  * Entry point for the Launch Control XL controller extension.
@@ -52,6 +62,11 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
 {
    private static final boolean DEBUG_TELEMETRY = true;
    private static final int DEVICE_DISCOVERY_WIDTH = 128;
+   private static final int DEVICE_DISCOVERY_WINDOW = 16;
+   /** Resolution of the timing wheel; note repeat wants millisecond wake-ups. */
+   private static final int TIMING_WHEEL_TICK_MS = 1;
+   private static final String DISCOVERY_LIVE = "Whole project (always observed)";
+   private static final String DISCOVERY_WINDOWED = "Windowed scan on demand";
 
    // Launch Control XL (default user mode) MIDI note and CC numbers
    private static final int[] TRACK_FOCUS_NOTES = {41, 42, 43, 44, 57, 58, 59, 60};
@@ -129,6 +144,8 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
    {
       mHost = getHost();
       mHostActions = new HostNotifications(mHost, DEBUG_TELEMETRY);
+      mTimingWheel = new TimingWheel(mHost::scheduleTask, System::nanoTime, TIMING_WHEEL_TICK_MS,
+         TimingWheel.DEFAULT_SLOTS);
 
       mMidiIn = mHost.getMidiInPort(0);
       mMidiOut = mHost.getMidiOutPort(0);
@@ -149,6 +166,19 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
          "Drum accent buttons momentary",
          "LaunchControl XL",
          true);
+      mDrumAuditionLength = mHost.getPreferences().getNumberSetting(
+         "Drum audition length",
+         "LaunchControl XL",
+         0,
+         1000,
+         10,
+         "ms",
+         DrumLayerController.DEFAULT_AUDITION_LENGTH_MS);
+      mDeviceDiscoveryMode = mHost.getPreferences().getEnumSetting(
+         "Device discovery (restart to apply)",
+         "LaunchControl XL",
+         new String[] {DISCOVERY_LIVE, DISCOVERY_WINDOWED},
+         DISCOVERY_LIVE);
 
       mMidiIn.setSysexCallback(this::onSysex);
       mMidiIn.setMidiCallback(this::handleIncomingMidi);
@@ -164,7 +194,13 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
       mRemoteControls.selectedPageIndex().markInterested();
       mRemoteControls.pageCount().markInterested();
 
-      mDrumPadBank = mCursorDevice.createDrumPadBank(DrumLayerController.PADS_PER_BANK);
+      for (int i = 0; i < DrumLayerController.PAD_WINDOWS; i++)
+      {
+         mDrumPadBanks[i] = mCursorDevice.createDrumPadBank(DrumLayerController.PADS_PER_BANK);
+      }
+      // Step mode edits one key at a time; the clip window is scrolled to it.
+      mDrumClip = mCursorTrack.createLauncherCursorClip(DrumStepCache.STEPS, 1);
+      mTransport = mHost.createTransport();
 
       final Project project = mHost.getProject();
       final Track rootTrackGroup = project.getRootTrackGroup();
@@ -227,12 +263,22 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
    private void initializeDeviceWithMode(final Mode mode)
    {
       mMidiOut.sendSysex("f00020290211770" + mode.getHexChannel() + "f7");
+      // The template announcement is skipped, so resend all LEDs here.
+      invalidateLeds();
       mIgnoreNextSysex = true;
    }
 
    private void initDiscoveryBanks()
    {
-      mDeviceLocator = new DeviceLocator(mHost, DEVICE_DISCOVERY_WIDTH);
+      // Host objects can only be created during init, so a change of this preference needs a restart.
+      if (DISCOVERY_WINDOWED.equals(mDeviceDiscoveryMode.get()))
+         mDeviceLocator = new DeviceLocator(mHost, DEVICE_DISCOVERY_WINDOW, ScanMode.WINDOWED);
+      else
+         mDeviceLocator = new DeviceLocator(mHost, DEVICE_DISCOVERY_WIDTH, ScanMode.LIVE);
+      mHostActions.debug("[LCXL] device locator (" + mDeviceLocator.mode() + "): " +
+         mDeviceLocator.deviceBankCount() + " device banks, " + mDeviceLocator.subscriptionCount() +
+         " subscriptions" + (mDeviceLocator.mode() == ScanMode.WINDOWED ? " while scanning" : "") + ", " +
+         mDeviceLocator.nestedSubscriptionCount() + " while probing nested chains");
    }
 
    private static void markParameterInterested(final RemoteControl parameter)
@@ -521,11 +567,13 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
 
       mDrumLayerController = new DrumLayerController(
          mHost,
+         mTimingWheel,
          mUserModeNoteInput,
          DRUM_USER_TEMPLATE_ID,
-         mDrumPadBank,
+         mDrumPadBanks,
          mCursorDevice,
-         mDrumPadRemoteControls,
+         mDrumClip,
+         mTransport,
          mDrumLayer,
          mHardwareSliders,
          drumKnobs,
@@ -543,8 +591,16 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
          if (mDrumLayerController != null)
             mDrumLayerController.setAccentMomentary(value);
       });
+      mDrumAuditionLength.addRawValueObserver(value -> {
+         if (mDrumLayerController != null)
+            mDrumLayerController.setAuditionLength((int)Math.round(value));
+      });
       mDrumLayer.bindPressed(mBtMute, mDrumLayerController::toggleMuteMode);
       mDrumLayer.bindPressed(mBtSolo, mDrumLayerController::toggleSoloMode);
+      mDrumLayer.bindPressed(mBtRecordArm, mDrumLayerController::toggleStepMode);
+      mDrumLayer.bindPressed(mBtDevice, mDrumLayerController::toggleRepeatMode);
+      mDrumLayer.bindPressed(mBtSendUp, () -> cycleRoleInstance(Role.DRUM, -1));
+      mDrumLayer.bindPressed(mBtSendDown, () -> cycleRoleInstance(Role.DRUM, 1));
       mDrumLayerController.init();
    }
 
@@ -764,6 +820,10 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
       {
          handleArpNote(data1);
       }
+      else if (message == Midi.NOTE_OFF || message == Midi.NOTE_ON)
+      {
+         handleArpNoteRelease(data1);
+      }
       else if (message == Midi.CC)
       {
          handleArpCc(data1, data2);
@@ -775,17 +835,20 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
    {
       if (note == DEVICE_NOTE)
       {
-         mArpLayerController.toggleTimingMode();
+         // Device acts as a modifier; the timing mode toggles on release when no combination was used.
+         mArpDeviceHeld = true;
+         mArpDeviceComboUsed = false;
+         mArpLayerController.setDeviceHeld(true);
          return;
       }
-      if (note == SOLO_NOTE)
+      if (mArpDeviceHeld && handleArpDeviceCombo(note))
       {
-         mArpLayerController.togglePatternMode();
+         mArpDeviceComboUsed = true;
          return;
       }
-      if (note == MUTE_NOTE)
+      if (note == MUTE_NOTE || note == SOLO_NOTE)
       {
-         mArpLayerController.toggleVelocityGateMode();
+         handleArpModeButton(note);
          return;
       }
       if (note == RECORD_ARM_NOTE)
@@ -806,11 +869,116 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
       }
    }
 
+   /**
+    * Device + button combinations of the arp layer: Record Arm toggles snapshot morphing, the focus row recalls
+    * a snapshot and the control row stores one. Mute and Solo step to the previous and next arp slot.
+    *
+    * @return True if the note was a combination
+    */
+   private boolean handleArpDeviceCombo(final int note)
+   {
+      if (note == MUTE_NOTE || note == SOLO_NOTE)
+      {
+         final int count = mArpLayerController.getSlotCount();
+         final int step = note == SOLO_NOTE ? 1 : -1;
+         mArpLayerController.selectSlot(Math.floorMod(mArpLayerController.getActiveSlot() + step, count));
+         return true;
+      }
+      if (note == RECORD_ARM_NOTE)
+      {
+         mArpLayerController.toggleMorphMode();
+         return true;
+      }
+      final int focusIndex = indexOf(TRACK_FOCUS_NOTES, note);
+      if (focusIndex >= 0)
+      {
+         mArpLayerController.recallSnapshot(focusIndex);
+         return true;
+      }
+      final int controlIndex = indexOf(TRACK_CONTROL_NOTES, note);
+      if (controlIndex >= 0)
+      {
+         mArpLayerController.storeSnapshot(controlIndex);
+         return true;
+      }
+      return false;
+   }
+
+   /**
+    * Mute and Solo toggle the velocity/gate and pattern modes on release. Holding one and pressing the other
+    * undoes (Mute) or redoes (Solo) the last step edit instead.
+    */
+   private void handleArpModeButton(final int note)
+   {
+      if (mArpModeHeldNote < 0)
+      {
+         mArpModeHeldNote = note;
+         mArpModeComboUsed = false;
+         return;
+      }
+      if (note == mArpModeHeldNote)
+         return;
+      mArpModeComboUsed = true;
+      if (note == MUTE_NOTE)
+         mArpLayerController.undoStepEdit();
+      else
+         mArpLayerController.redoStepEdit();
+   }
+
+   private void handleArpNoteRelease(final int note)
+   {
+      if (note == DEVICE_NOTE && mArpDeviceHeld)
+      {
+         mArpDeviceHeld = false;
+         mArpLayerController.setDeviceHeld(false);
+         if (!mArpDeviceComboUsed)
+            mArpLayerController.toggleTimingMode();
+      }
+      else if (note == mArpModeHeldNote)
+      {
+         mArpModeHeldNote = -1;
+         if (mArpModeComboUsed)
+            return;
+         if (note == SOLO_NOTE)
+            mArpLayerController.togglePatternMode();
+         else
+            mArpLayerController.toggleVelocityGateMode();
+      }
+   }
+
    private void handleArpCc(final int cc, final int value)
    {
       if (value == 0)
          return; // ignore releases
 
+      if (mArpDeviceHeld && (cc == TRACK_LEFT_CC || cc == TRACK_RIGHT_CC))
+      {
+         mArpDeviceComboUsed = true;
+         cycleRoleInstance(Role.ARP, cc == TRACK_RIGHT_CC ? 1 : -1);
+         return;
+      }
+      if (mArpDeviceHeld && (cc == SEND_UP_CC || cc == SEND_DOWN_CC))
+      {
+         mArpDeviceComboUsed = true;
+         mArpLayerController.selectStepPage(mArpLayerController.getStepPage() + (cc == SEND_DOWN_CC ? 1 : -1));
+         return;
+      }
+
+      if (mArpLayerController.isQuantizeModeActive())
+      {
+         // In quantize mode the arrows pick the scale preset (Send Up/Down) and its root (Track Left/Right).
+         if (cc == SEND_UP_CC || cc == SEND_DOWN_CC)
+         {
+            mArpLayerController.handleScalePresetStep(cc == SEND_DOWN_CC ? 1 : -1);
+            return;
+         }
+         if (cc == TRACK_LEFT_CC || cc == TRACK_RIGHT_CC)
+         {
+            mArpLayerController.handleScaleRootStep(cc == TRACK_RIGHT_CC ? 1 : -1);
+            return;
+         }
+      }
+
       if (cc == SEND_UP_CC)
       {
          mArpLayerController.handleOctaveIncrease();
@@ -893,48 +1061,95 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
     * requested) before scanning via the {@link DeviceLocator}, then applies the focus (select track,
     * select device, notify cursor device).
     *
+    * The locator may complete later (windowed scan, or retries while device names are still arriving), so
+    * the outcome is reported through {@code onFocused}. A template change cancels the pending request.
+    *
     * @param role The device role to focus (drum or arp).
     * @param tryCacheFirst Whether the cached index should be tried before re-scanning.
-    * @return True when a matching device was focused.
+    * @param onFocused Receives true when a matching device was focused.
     */
-   private boolean focusDevice(final Role role, final boolean tryCacheFirst)
+   private void focusDevice(final Role role, final boolean tryCacheFirst, final Consumer<Boolean> onFocused)
    {
       if (this.mDeviceLocator == null)
-         return false;
+      {
+         onFocused.accept(false);
+         return;
+      }
+
+      this.mPendingFocus = this.mDeviceLocator.requestFocus(role, tryCacheFirst, focusResult -> {
+         this.mPendingFocus = null;
+         focusResult.ifPresent(result -> this.applyFocusedDevice(role, result));
+         onFocused.accept(focusResult.isPresent());
+      });
+   }
+
+   /**
+    * Focus the next/previous device of the role in track order and show which instance is now active. The
+    * arp cursor stays pinned to the new device.
+    */
+   private void cycleRoleInstance(final Role role, final int direction)
+   {
+      if (mDeviceLocator == null)
+         return;
+      if (mDeviceLocator.mode() != ScanMode.LIVE)
+      {
+         mHostActions.showPopup("Cycling devices needs Device discovery: " + DISCOVERY_LIVE);
+         return;
+      }
+
+      cancelPendingFocus();
+      final Optional<FocusResult> result = mDeviceLocator.focusAdjacent(role, direction);
+      if (result.isEmpty())
+      {
+         mHostActions.showPopup("No " + getRoleLabel(role) + " found");
+         return;
+      }
 
-      Optional<FocusResult> focusResult = Optional.empty();
-      if (tryCacheFirst)
-         focusResult = this.mDeviceLocator.focusCached(role);
+      final FocusResult focus = result.get();
+      applyFocusedDevice(role, focus);
+      if (role == Role.ARP && mCursorDevice != null)
+         mCursorDevice.isPinned().set(true);
+      mHostActions.showPopup(getRoleLabel(role) + " " + mDeviceLocator.matchRank(role, focus.trackIndex()) + " of " +
+         mDeviceLocator.matchCount(role));
+   }
 
-      if (focusResult.isEmpty())
-         focusResult = this.mDeviceLocator.focusFirst(role);
+   private boolean canCycleRoleInstances(final Role role)
+   {
+      return mDeviceLocator != null && mDeviceLocator.mode() == ScanMode.LIVE && mDeviceLocator.matchCount(role) > 1;
+   }
 
-      focusResult.ifPresent(result -> this.applyFocusedDevice(role, result));
-      return focusResult.isPresent();
+   private void cancelPendingFocus()
+   {
+      if (this.mPendingFocus != null)
+      {
+         this.mPendingFocus.cancel();
+         this.mPendingFocus = null;
+      }
    }
 
    /**
-    * Apply the device focus result by selecting the track/device in Bitwig and logging the action.
+    * Apply the device focus result by selecting the track/device in Bitwig and logging the action. The
+    * track may sit inside a collapsed group, so it is revealed before it is selected.
     */
    private void applyFocusedDevice(final Role role, final FocusResult focus)
    {
       final Track track = focus.track();
+      track.makeVisibleInArranger();
+      track.makeVisibleInMixer();
       track.selectInMixer();
       track.selectInEditor();
 
       if (this.mCursorDevice != null)
          this.mCursorDevice.selectDevice(focus.device());
+      if (role == Role.ARP && this.mArpLayerController != null)
+         this.mArpLayerController.assignActiveSlot(track, focus.device());
 
       this.mHostActions.debug("[LCXL] Focused " + getRoleLabel(role) + " on track index " + focus.trackIndex());
    }
 
    private static String getRoleLabel(final Role role)
    {
-      return switch (role)
-      {
-         case DRUM -> "Drum Machine";
-         case ARP -> "Arpeggiator";
-      };
+      return role.label();
    }
 
    /**
@@ -949,14 +1164,27 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
          return;
       }
       mArpLayerActive = active;
+      mArpDeviceHeld = false;
+      mArpModeHeldNote = -1;
+      mArpLayerController.setDeviceHeld(false);
       if (active)
       {
          mHostActions.debug("[LCXL] arp layer engaged (user template 8)");
-         boolean attached = false;
          if (mAutoAttachToFirst == null || mAutoAttachToFirst.get())
-            attached = focusDevice(Role.ARP, true);
-         if (mCursorDevice != null)
-            mCursorDevice.isPinned().set(attached);
+         {
+            focusDevice(Role.ARP, true, attached -> {
+               if (mArpLayerActive && mCursorDevice != null)
+                  mCursorDevice.isPinned().set(attached);
+               if (mArpLayerActive && !attached)
+                  assignArpSlotFromSelection();
+            });
+         }
+         else
+         {
+            if (mCursorDevice != null)
+               mCursorDevice.isPinned().set(false);
+            assignArpSlotFromSelection();
+         }
          mArpLayerController.activate();
          mHostActions.showPopup("Arp layer active (Template 8)");
       }
@@ -971,6 +1199,16 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
       }
    }
 
+   /**
+    * Give an empty arp slot the device selected in Bitwig, so the layer has something to control when no
+    * Arpeggiator was located.
+    */
+   private void assignArpSlotFromSelection()
+   {
+      if (mCursorDevice != null && !mArpLayerController.hasActiveSlotDevice())
+         mArpLayerController.assignActiveSlot(mCursorTrack, mCursorDevice);
+   }
+
    /**
     * Engage or disengage the drum user layer (user template 7). When enabling, attempt to auto-focus
     * the drum machine track/device and rebind hardware controls so the {@link DrumLayerController}
@@ -988,9 +1226,10 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
          mHostActions.debug("[LCXL] drum layer engage request (user template 7) currentTemplate=" + mCurrentTemplateChannel);
          if (mAutoAttachToFirst == null || mAutoAttachToFirst.get())
          {
-            final boolean attached = focusDevice(Role.DRUM, true);
-            if (!attached)
-               mHostActions.debug("[LCXL] Unable to focus Drum Machine automatically");
+            focusDevice(Role.DRUM, true, attached -> {
+               if (!attached)
+                  mHostActions.debug("[LCXL] Unable to focus Drum Machine automatically");
+            });
          }
          attachHardwareMatchers();
          mDrumLayerController.engage();
@@ -1041,6 +1280,7 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
    private void selectMode(final Mode mode)
    {
       mMode = mode;
+      invalidateLeds();
       mSend2Device1Layer.setIsActive(mode == Mode.Send2Device1);
       mSend2Pan1Layer.setIsActive(mode == Mode.Send2Pan1);
       mSend3Layer.setIsActive(mode == Mode.Send3);
@@ -1060,6 +1300,24 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
       mHostActions.showPopup(mode.getNotification());
    }
 
+   private void invalidateLeds()
+   {
+      mDeviceLed.invalidate();
+      mMuteLed.invalidate();
+      mSoloLed.invalidate();
+      mRecordArmLed.invalidate();
+      mUpButtonLed.invalidate();
+      mDownButtonLed.invalidate();
+      mLeftButtonLed.invalidate();
+      mRightButtonLed.invalidate();
+
+      for (final SimpleLed simpleLed : mKnobsLed)
+         simpleLed.invalidate();
+
+      for (final SimpleLed simpleLed : mBottomButtonsLed)
+         simpleLed.invalidate();
+   }
+
    private void setSizeOfSendBank(final int size)
    {
       for (int i = 0; i < 8; ++i)
@@ -1088,8 +1346,12 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
       if (templateId.isPresent())
       {
          final int id = templateId.getAsInt();
+         // The LEDs are kept per template on the device, so the next flush has to send all of them.
+         invalidateLeds();
          mHostActions.debug("[LCXL] onSysex templateId=" + id + " arpTemplate=" + (id == ARP_USER_TEMPLATE_ID) +
             " factory=" + (id >= 8));
+         if (id != mCurrentTemplateChannel)
+            cancelPendingFocus();
          if (id < 8)
          {
             final boolean arpTemplate = id == ARP_USER_TEMPLATE_ID;
@@ -1133,6 +1395,10 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
    @Override
    public void flush()
    {
+      // Arp step writes are coalesced per cycle; send them even if the layer was just left.
+      if (mArpLayerController != null)
+         mArpLayerController.flush();
+
       // Do not repaint LEDs in raw user templates without an active overlay layer.
       if (!mFactoryTemplateActive && !mArpLayerActive && !mDrumLayerActive)
       {
@@ -1241,7 +1507,14 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
 
    private void paintDrumButtons()
    {
+      if (mDrumLayerController != null && mDrumLayerController.isStepMode())
+      {
+         paintDrumSteps();
+         return;
+      }
+
       final boolean soloMode = mDrumLayerController != null && mDrumLayerController.isSoloMode();
+      final boolean repeatMode = mDrumLayerController != null && mDrumLayerController.isRepeatMode();
       final TrackControl drumControlMode = mDrumLayerController != null ? mDrumLayerController.getTrackControlMode() : TrackControl.None;
       final int selectedPad = mDrumLayerController != null ? mDrumLayerController.getSelectedPadIndex() : -1;
 
@@ -1249,16 +1522,30 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
       {
          int topColor = SimpleLedColor.Off.value();
          int bottomColor = SimpleLedColor.Off.value();
-         if (mDrumPadBank != null)
+         if (mDrumLayerController != null)
          {
-            final DrumPad pad = mDrumPadBank.getItemAt(i);
+            final DrumPad pad = mDrumLayerController.getPad(i);
             final boolean exists = pad.exists().get();
             if (exists)
             {
-               topColor = i == selectedPad ? SimpleLedColor.Yellow.value() : SimpleLedColor.AmberLow.value();
+               topColor = switch (mDrumLayerController.getPadActivity(i))
+               {
+                  case PadActivity.BRIGHT -> SimpleLedColor.Green.value();
+                  case PadActivity.DIM -> SimpleLedColor.GreenLow.value();
+                  default -> i == selectedPad ? SimpleLedColor.Yellow.value() : SimpleLedColor.AmberLow.value();
+               };
                final boolean muteState = pad.mute().get();
                final boolean soloState = pad.solo().get();
-               if (soloMode)
+               if (repeatMode)
+               {
+                  // Straight rates yellow, triplets amber; the held rate is bright.
+                  final boolean held = i == mDrumLayerController.getRepeatButton();
+                  if (i < DrumLayerController.PADS_PER_BANK / 2)
+                     bottomColor = held ? SimpleLedColor.Yellow.value() : SimpleLedColor.YellowLow.value();
+                  else
+                     bottomColor = held ? SimpleLedColor.Amber.value() : SimpleLedColor.AmberLow.value();
+               }
+               else if (soloMode)
                {
                   bottomColor = soloState
                      ? SimpleLedColor.Yellow.value()
@@ -1272,7 +1559,7 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
                }
                else
                {
-                  final RemoteControlsPage rc = mDrumPadRemoteControls[i];
+                  final RemoteControlsPage rc = mDrumLayerController.getPadRemoteControls(i);
                   final RemoteControl param = rc != null ? rc.getParameter(3) : null;
                   final boolean paramExists = param != null && param.exists().get();
                   final double value = paramExists ? param.value().get() : 0;
@@ -1287,6 +1574,26 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
       }
    }
 
+   /** Step mode: set steps are green (dim for soft notes), the playing step is amber. */
+   private void paintDrumSteps()
+   {
+      final int bits = mDrumLayerController.getStepBits();
+      final int playing = mDrumLayerController.getPlayingStepIndex();
+      for (int i = 0; i < DrumStepCache.PAGE_STEPS; i++)
+      {
+         final int color;
+         if (i == playing)
+            color = SimpleLedColor.Amber.value();
+         else if ((bits & (1 << i)) == 0)
+            color = SimpleLedColor.Off.value();
+         else
+            color = mDrumLayerController.getStepVelocity(i) < 64
+               ? SimpleLedColor.GreenLow.value()
+               : SimpleLedColor.Green.value();
+         mBottomButtonsLed[i].setColor(color);
+      }
+   }
+
    protected void paintKnobs()
    {
       if (mDrumLayerActive)
@@ -1393,11 +1700,29 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
       final int red = SimpleLedColor.Red.value();
       final int redLow = SimpleLedColor.RedLow.value();
 
+      if (mDrumLayerController != null && mDrumLayerController.isStepMode())
+      {
+         // The knobs edit velocity, timbre and pan of the half page holding the last step pressed.
+         final int bits = mDrumLayerController.getStepBits();
+         final int offset = mDrumLayerController.getStepKnobOffset();
+         for (int col = 0; col < DrumLayerController.PADS_PER_BANK; col++)
+         {
+            final int step = offset + col;
+            final boolean set = (bits & (1 << step)) != 0;
+            final double velocity = mDrumLayerController.getStepVelocity(step) / 127.0;
+            mKnobsLed[col].setColor(set ? levelColor(velocity, off, yellowLow, yellow) : off);
+            mKnobsLed[8 + col].setColor(set ? amberLow : off);
+            mKnobsLed[16 + col].setColor(set ? redLow : off);
+         }
+         return;
+      }
+
       for (int padIndex = 0; padIndex < DrumLayerController.PADS_PER_BANK; padIndex++)
       {
-         final DrumPad pad = mDrumPadBank != null ? mDrumPadBank.getItemAt(padIndex) : null;
+         final DrumPad pad = mDrumLayerController != null ? mDrumLayerController.getPad(padIndex) : null;
          final boolean padExists = pad != null && pad.exists().get();
-         final RemoteControlsPage remoteControlsPage = mDrumPadRemoteControls[padIndex];
+         final RemoteControlsPage remoteControlsPage =
+            mDrumLayerController != null ? mDrumLayerController.getPadRemoteControls(padIndex) : null;
          for (int paramIndex = 0; paramIndex < 3; paramIndex++)
          {
             final int ledIndex = paramIndex * 8 + padIndex;
@@ -1431,15 +1756,16 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
 
       if (mDrumLayerActive)
       {
-         final boolean canScrollBack = mDrumPadBank != null && mDrumPadBank.canScrollBackwards().get();
-         final boolean canScrollForward = mDrumPadBank != null && mDrumPadBank.canScrollForwards().get();
-         mDeviceLed.setColor(off);
+         final boolean canScrollBack = mDrumLayerController != null && mDrumLayerController.canScrollLeft();
+         final boolean canScrollForward = mDrumLayerController != null && mDrumLayerController.canScrollRight();
+         mDeviceLed.setColor(mDrumLayerController != null && mDrumLayerController.isRepeatMode() ? yellow : off);
          final TrackControl drumControlMode = mDrumLayerController != null ? mDrumLayerController.getTrackControlMode() : TrackControl.None;
          mMuteLed.setColor(drumControlMode == TrackControl.Mute ? yellow : off);
          mSoloLed.setColor(mDrumLayerController != null && mDrumLayerController.isSoloMode() ? yellow : off);
-         mRecordArmLed.setColor(off);
-         mUpButtonLed.setColor(off);
-         mDownButtonLed.setColor(off);
+         mRecordArmLed.setColor(mDrumLayerController != null && mDrumLayerController.isStepMode() ? yellow : off);
+         final boolean canCycle = canCycleRoleInstances(Role.DRUM);
+         mUpButtonLed.setColor(canCycle ? yellow : off);
+         mDownButtonLed.setColor(canCycle ? yellow : off);
          mLeftButtonLed.setColor(canScrollBack ? yellow : off);
          mRightButtonLed.setColor(canScrollForward ? yellow : off);
          return;
@@ -1448,13 +1774,18 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
       if (mArpLayerActive && mArpLayerController != null)
       {
          mDeviceLed.setColor(mArpLayerController.isTimingModeActive() ? yellow : off);
-         mSoloLed.setColor(mArpLayerController.isPatternModeActive() ? yellow : off);
-         mMuteLed.setColor(mArpLayerController.isVelocityGateModeActive() ? yellow : off);
-         mRecordArmLed.setColor(mArpLayerController.isQuantizeModeActive() ? yellow : off);
-         mUpButtonLed.setColor(off);
-         mDownButtonLed.setColor(off);
-         mLeftButtonLed.setColor(off);
-         mRightButtonLed.setColor(off);
+         mSoloLed.setColor(mArpDeviceHeld || mArpLayerController.isPatternModeActive() ? yellow : off);
+         mMuteLed.setColor(mArpDeviceHeld || mArpLayerController.isVelocityGateModeActive() ? yellow : off);
+         mRecordArmLed.setColor(mArpLayerController.isQuantizeModeActive()
+            || mArpLayerController.isMorphModeActive() ? yellow : off);
+         final int page = mArpLayerController.getStepPage();
+         final boolean scaleKeys = !mArpDeviceHeld && mArpLayerController.isQuantizeModeActive();
+         mUpButtonLed.setColor(scaleKeys || mArpDeviceHeld && page > 0 ? yellow : off);
+         mDownButtonLed.setColor(scaleKeys
+            || mArpDeviceHeld && page + 1 < mArpLayerController.getStepPageCount() ? yellow : off);
+         final boolean canCycle = mArpDeviceHeld && canCycleRoleInstances(Role.ARP);
+         mLeftButtonLed.setColor(scaleKeys || canCycle ? yellow : off);
+         mRightButtonLed.setColor(scaleKeys || canCycle ? yellow : off);
          return;
       }
 
@@ -1495,11 +1826,18 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
    private RhArpLayerController mArpLayerController;
    private DrumLayerController mDrumLayerController;
    private DeviceLocator mDeviceLocator;
+   private FocusRequest mPendingFocus;
+   private boolean mArpDeviceHeld;
+   private boolean mArpDeviceComboUsed;
+   private int mArpModeHeldNote = -1;
+   private boolean mArpModeComboUsed;
    private SettableBooleanValue mAuditionOnDrumSelect;
    private SettableBooleanValue mDrumAccentMomentary;
-   private DrumPadBank mDrumPadBank;
-   private final RemoteControlsPage[] mDrumPadRemoteControls =
-      new RemoteControlsPage[DrumLayerController.PADS_PER_BANK];
+   private SettableRangedValue mDrumAuditionLength;
+   private final DrumPadBank[] mDrumPadBanks = new DrumPadBank[DrumLayerController.PAD_WINDOWS];
+   private PinnableCursorClip mDrumClip;
+   private Transport mTransport;
+   private TimingWheel mTimingWheel;
 
    private boolean mIsDeviceOn = false;
    private boolean mIgnoreNextSysex = false;
@@ -1510,63 +1848,63 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
    private TrackControl mTrackControl = TrackControl.None;
    private Mode mMode = Mode.Send2Device1;
 
-   private final SimpleLed[] mKnobsLed = new SimpleLed[] {
-      new SimpleLed(0x90, 0),
-      new SimpleLed(0x90, 1),
-      new SimpleLed(0x90, 2),
-      new SimpleLed(0x90, 3),
-      new SimpleLed(0x90, 4),
-      new SimpleLed(0x90, 5),
-      new SimpleLed(0x90, 6),
-      new SimpleLed(0x90, 7),
-
-      new SimpleLed(0x90, 8),
-      new SimpleLed(0x90, 9),
-      new SimpleLed(0x90, 10),
-      new SimpleLed(0x90, 11),
-      new SimpleLed(0x90, 12),
-      new SimpleLed(0x90, 13),
-      new SimpleLed(0x90, 14),
-      new SimpleLed(0x90, 15),
-
-      new SimpleLed(0x90, 16),
-      new SimpleLed(0x90, 17),
-      new SimpleLed(0x90, 18),
-      new SimpleLed(0x90, 19),
-      new SimpleLed(0x90, 20),
-      new SimpleLed(0x90, 21),
-      new SimpleLed(0x90, 22),
-      new SimpleLed(0x90, 23),
+   private final TemplateLed[] mKnobsLed = new TemplateLed[] {
+      new TemplateLed(0),
+      new TemplateLed(1),
+      new TemplateLed(2),
+      new TemplateLed(3),
+      new TemplateLed(4),
+      new TemplateLed(5),
+      new TemplateLed(6),
+      new TemplateLed(7),
+
+      new TemplateLed(8),
+      new TemplateLed(9),
+      new TemplateLed(10),
+      new TemplateLed(11),
+      new TemplateLed(12),
+      new TemplateLed(13),
+      new TemplateLed(14),
+      new TemplateLed(15),
+
+      new TemplateLed(16),
+      new TemplateLed(17),
+      new TemplateLed(18),
+      new TemplateLed(19),
+      new TemplateLed(20),
+      new TemplateLed(21),
+      new TemplateLed(22),
+      new TemplateLed(23),
    };
 
-   private final SimpleLed[] mBottomButtonsLed = new SimpleLed[] {
-      new SimpleLed(0x90, 24),
-      new SimpleLed(0x90, 25),
-      new SimpleLed(0x90, 26),
-      new SimpleLed(0x90, 27),
-      new SimpleLed(0x90, 28),
-      new SimpleLed(0x90, 29),
-      new SimpleLed(0x90, 30),
-      new SimpleLed(0x90, 31),
-
-      new SimpleLed(0x90, 32),
-      new SimpleLed(0x90, 33),
-      new SimpleLed(0x90, 34),
-      new SimpleLed(0x90, 35),
-      new SimpleLed(0x90, 36),
-      new SimpleLed(0x90, 37),
-      new SimpleLed(0x90, 38),
-      new SimpleLed(0x90, 39),
+   private final TemplateLed[] mBottomButtonsLed = new TemplateLed[] {
+      new TemplateLed(24),
+      new TemplateLed(25),
+      new TemplateLed(26),
+      new TemplateLed(27),
+      new TemplateLed(28),
+      new TemplateLed(29),
+      new TemplateLed(30),
+      new TemplateLed(31),
+
+      new TemplateLed(32),
+      new TemplateLed(33),
+      new TemplateLed(34),
+      new TemplateLed(35),
+      new TemplateLed(36),
+      new TemplateLed(37),
+      new TemplateLed(38),
+      new TemplateLed(39),
    };
 
-   private final SimpleLed mDeviceLed = new SimpleLed(0x90, 40);
-   private final SimpleLed mMuteLed = new SimpleLed(0x90, 41);
-   private final SimpleLed mSoloLed = new SimpleLed(0x90, 42);
-   private final SimpleLed mRecordArmLed = new SimpleLed(0x90, 43);
-   private final SimpleLed mUpButtonLed = new SimpleLed(0x90, 44);
-   private final SimpleLed mDownButtonLed = new SimpleLed(0x90, 45);
-   private final SimpleLed mLeftButtonLed = new SimpleLed(0x90, 46);
-   private final SimpleLed mRightButtonLed = new SimpleLed(0x90, 47);
+   private final TemplateLed mDeviceLed = new TemplateLed(40);
+   private final TemplateLed mMuteLed = new TemplateLed(41);
+   private final TemplateLed mSoloLed = new TemplateLed(42);
+   private final TemplateLed mRecordArmLed = new TemplateLed(43);
+   private final TemplateLed mUpButtonLed = new TemplateLed(44);
+   private final TemplateLed mDownButtonLed = new TemplateLed(45);
+   private final TemplateLed mLeftButtonLed = new TemplateLed(46);
+   private final TemplateLed mRightButtonLed = new TemplateLed(47);
 
    private HardwareSurface mHardwareSurface;
    private final int[] mKnobCcNumbers = new int[3 * 8];
@@ -1584,6 +1922,7 @@ public class LaunchControlXlControllerExtension extends ControllerExtension
    private final AbsoluteHardwareKnob[] mHardwareKnobs = new AbsoluteHardwareKnob[3 * 8];
    private final HardwareSlider[] mHardwareSliders = new HardwareSlider[8];
    private SettableBooleanValue mAutoAttachToFirst;
+   private SettableEnumValue mDeviceDiscoveryMode;
 
    private Layer mSend2Device1Layer;
    private Layer mSend2Pan1Layer;
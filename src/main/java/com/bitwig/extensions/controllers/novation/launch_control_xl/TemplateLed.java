@@ -0,0 +1,62 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl;
+
+import com.bitwig.extensions.controllers.novation.common.SimpleLed;
+import com.bitwig.extensions.controllers.novation.common.SimpleLedColor;
+
+/**
+ * LED written with the template LED sysex. {@link SimpleLed#flush(StringBuilder)} keeps appending an LED
+ * once its colour changed; this one remembers the colour it sent last and appends only a different one, so
+ * a playhead move sends just the two LEDs that changed. {@link #invalidate()} forgets the sent colour, since
+ * the device keeps the LEDs per template.
+ */
+final class TemplateLed extends SimpleLed
+{
+   private static final int NOT_SENT = -1;
+
+   TemplateLed(final int index)
+   {
+      super(0x90, index);
+   }
+
+   @Override
+   public void setColor(final int color)
+   {
+      super.setColor(color);
+      mColor = color;
+   }
+
+   @Override
+   public void setColor(final SimpleLedColor color)
+   {
+      super.setColor(color);
+      mColor = color.value();
+   }
+
+   @Override
+   public void flush(final StringBuilder sb)
+   {
+      if (mColor == mSentColor)
+         return;
+
+      final int data1 = getData1();
+      sb.append(" ");
+      if (data1 < 16)
+         sb.append('0');
+      sb.append(Integer.toHexString(data1));
+      sb.append(" ");
+      if (mColor < 16)
+         sb.append('0');
+      sb.append(Integer.toHexString(mColor));
+      mSentColor = mColor;
+   }
+
+   @Override
+   public void invalidate()
+   {
+      super.invalidate();
+      mSentColor = NOT_SENT;
+   }
+
+   private int mColor = 0;
+   private int mSentColor = NOT_SENT;
+}
@@ -0,0 +1,176 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.arp;
+
+import com.bitwig.extension.controller.api.Channel;
+import com.bitwig.extension.controller.api.ControllerHost;
+import com.bitwig.extension.controller.api.CursorDeviceFollowMode;
+import com.bitwig.extension.controller.api.CursorTrack;
+import com.bitwig.extension.controller.api.Device;
+import com.bitwig.extension.controller.api.IntegerValue;
+import com.bitwig.extension.controller.api.Parameter;
+import com.bitwig.extension.controller.api.PinnableCursorDevice;
+import com.bitwig.extension.controller.api.SpecificBitwigDevice;
+import com.bitwig.extensions.controllers.novation.launch_control_xl.support.DeviceIdentity;
+
+/**
+ * One Arpeggiator controlled by {@link RhArpLayerController}: a track and device cursor that do not follow
+ * Bitwig's selection, with the arp's parameters, a write buffer and an undo log of their own.
+ * <p>
+ * Only the active slot is subscribed at full detail (global parameters, the step output and the visible step
+ * page). Other slots keep just their position and name observed; their parameters keep the last reported
+ * values, which are shown until fresh ones arrive when the slot becomes active again.
+ */
+final class ArpDeviceSlot {
+
+   /** Step edits kept for undo per slot. */
+   private static final int EDIT_LOG_CAPACITY = 256;
+
+   /** Receives changes of a slot's observed values. */
+   interface Listener {
+      void slotMoved(ArpDeviceSlot slot);
+
+      void stepChanged(ArpDeviceSlot slot);
+   }
+
+   final int index;
+   final CursorTrack cursorTrack;
+   final PinnableCursorDevice cursorDevice;
+   final ParameterWriteBuffer writes;
+   final Parameter octaves;
+   final Parameter steps;
+   final IntegerValue stepPosition;
+   final Parameter globalVelocity;
+   final Parameter globalGate;
+   final Parameter rateMode;
+   final Parameter shuffle;
+   final Parameter rate;
+   final Parameter retrigger;
+   final Parameter mode;
+   final Parameter[] skip = new Parameter[ArpStepState.STEPS];
+   final Parameter[] velocity = new Parameter[ArpStepState.STEPS];
+   final Parameter[] gate = new Parameter[ArpStepState.STEPS];
+   final Parameter[] transpose = new Parameter[ArpStepState.STEPS];
+   final int[] velocityIds = new int[ArpStepState.STEPS];
+   final int[] gateIds = new int[ArpStepState.STEPS];
+   final int[] transposeIds = new int[ArpStepState.STEPS];
+   /** Write buffer id of each {@link ArpSnapshotBank} parameter. */
+   final int[] snapshotIds = new int[ArpSnapshotBank.PARAMETERS];
+   final StepEditLog edits = new StepEditLog(EDIT_LOG_CAPACITY);
+   /** {@link ArpStepStateCache} entry of the device and its generation when bound, or -1 while unbound. */
+   int stateEntry = -1;
+   int stateGeneration;
+   /** Counts position reports, so that a delayed update of the entry only runs after the last one. */
+   int stateLookup;
+   private final Parameter[] globals;
+   private final int pageSize;
+   private int trackPosition = -1;
+   private int devicePosition = -1;
+   private String trackName = "";
+   private boolean deviceExists;
+
+   ArpDeviceSlot(final ControllerHost host, final int index, final int pageSize, final Listener listener) {
+      this.index = index;
+      this.pageSize = pageSize;
+      this.writes = new ParameterWriteBuffer(host, ArpSnapshotBank.PARAMETERS);
+      this.cursorTrack = host.createCursorTrack("LCXL_ARP_SLOT_" + index, "Arp slot " + (index + 1), 0, 0, false);
+      this.cursorDevice = cursorTrack.createCursorDevice("LCXL_ARP_SLOT_DEVICE_" + index, "Arp slot " + (index + 1),
+         0, CursorDeviceFollowMode.FIRST_DEVICE);
+      final SpecificBitwigDevice arpDevice = cursorDevice.createSpecificBitwigDevice(DeviceIdentity.ARPEGGIATOR_ID);
+
+      for (int i = 0; i < ArpStepState.STEPS; i++) {
+         skip[i] = interested(arpDevice.createParameter("SKIP_" + (i + 1)));
+         snapshotIds[ArpSnapshotBank.SKIP + i] = writes.register(skip[i]);
+         velocity[i] = interested(arpDevice.createParameter("STEP_" + (i + 1)));
+         velocityIds[i] = writes.register(velocity[i]);
+         snapshotIds[ArpSnapshotBank.VELOCITY + i] = velocityIds[i];
+         gate[i] = interested(arpDevice.createParameter("GATE_" + (i + 1)));
+         gateIds[i] = writes.register(gate[i]);
+         snapshotIds[ArpSnapshotBank.GATE + i] = gateIds[i];
+         transpose[i] = interested(arpDevice.createParameter("STEP_" + (i + 1) + "_TRANSPOSE"));
+         transposeIds[i] = writes.register(transpose[i]);
+         snapshotIds[ArpSnapshotBank.TRANSPOSE + i] = transposeIds[i];
+      }
+      this.octaves = interested(arpDevice.createParameter("OCTAVES"));
+      this.steps = interested(arpDevice.createParameter("STEPS"));
+      this.globalVelocity = interested(arpDevice.createParameter("GLOBAL_VEL"));
+      this.globalGate = interested(arpDevice.createParameter("GLOBAL_GATE"));
+      this.rateMode = interested(arpDevice.createParameter("RATE_MODE"));
+      this.shuffle = interested(arpDevice.createParameter("SHUFFLE"));
+      this.rate = interested(arpDevice.createParameter("RATE"));
+      this.retrigger = interested(arpDevice.createParameter("RETRIGGER"));
+      this.mode = interested(arpDevice.createParameter("MODE"));
+      this.globals = new Parameter[] {octaves, steps, globalVelocity, globalGate, rateMode, shuffle, rate, retrigger,
+         mode};
+      snapshotIds[ArpSnapshotBank.STEP_COUNT] = writes.register(steps);
+      snapshotIds[ArpSnapshotBank.RATE] = writes.register(rate);
+      snapshotIds[ArpSnapshotBank.MODE] = writes.register(mode);
+      snapshotIds[ArpSnapshotBank.GLOBAL_VELOCITY] = writes.register(globalVelocity);
+      snapshotIds[ArpSnapshotBank.GLOBAL_GATE] = writes.register(globalGate);
+
+      this.stepPosition = arpDevice.createIntegerOutputValue("STEP");
+      this.stepPosition.addValueObserver(position -> listener.stepChanged(this));
+      cursorTrack.position().addValueObserver(position -> {
+         trackPosition = position;
+         listener.slotMoved(this);
+      });
+      cursorDevice.position().addValueObserver(position -> {
+         devicePosition = position;
+         listener.slotMoved(this);
+      });
+      cursorTrack.name().addValueObserver(name -> trackName = name);
+      cursorDevice.exists().addValueObserver(exists -> {
+         deviceExists = exists;
+         listener.slotMoved(this);
+      });
+   }
+
+   private static Parameter interested(final Parameter parameter) {
+      parameter.markInterested();
+      return parameter;
+   }
+
+   /** Point the slot at a device and keep it there. */
+   void assign(final Channel track, final Device device) {
+      stateEntry = -1;
+      cursorTrack.selectChannel(track);
+      cursorDevice.selectDevice(device);
+      cursorDevice.isPinned().set(true);
+   }
+
+   boolean hasDevice() {
+      return deviceExists;
+   }
+
+   String trackName() {
+      return trackName;
+   }
+
+   /** @return identity of the device for {@link ArpStepStateCache}, or -1 while the slot is not placed */
+   long key() {
+      if (trackPosition < 0 || devicePosition < 0) {
+         return -1;
+      }
+      return ArpStepStateCache.key(trackPosition, devicePosition);
+   }
+
+   /**
+    * Subscribe the slot at full detail with step page {@code page} visible, or drop to position and name only.
+    */
+   void setDetail(final boolean full, final int page) {
+      for (final Parameter parameter : globals) {
+         parameter.setIsSubscribed(full);
+      }
+      stepPosition.setIsSubscribed(full);
+      for (int p = 0; p * pageSize < ArpStepState.STEPS; p++) {
+         setPageSubscribed(p, full && p == page);
+      }
+   }
+
+   void setPageSubscribed(final int page, final boolean subscribed) {
+      for (int i = page * pageSize; i < (page + 1) * pageSize; i++) {
+         skip[i].setIsSubscribed(subscribed);
+         velocity[i].setIsSubscribed(subscribed);
+         gate[i].setIsSubscribed(subscribed);
+         transpose[i].setIsSubscribed(subscribed);
+      }
+   }
+}
@@ -1,5 +1,7 @@
 package com.bitwig.extensions.controllers.novation.launch_control_xl.arp;
 
+import java.nio.ByteBuffer;
+
 import com.bitwig.extension.controller.api.Parameter;
 
 /**
@@ -12,11 +14,17 @@ import com.bitwig.extension.controller.api.Parameter;
  * <li>quantize layout
  * <li>gate mute state (button and/or due to quantization)
  * </ul>
- *
+ * Changes are reported to {@link ArpParameterContainer#arpStateChanged(ArpInstance)} so the state can be
+ * persisted, see {@link #writeState(ByteBuffer)}.
  */
-public class ArpInstance {
+public class ArpInstance implements ArpInstanceStore.Entry {
 
 	private static final int NUMBER_OF_STEPS = 16;
+	/**
+	 * Size of the packed state: per step the stored velocity and gate (doubles), the mute state, base note and
+	 * offset note (bytes), followed by the 12-bit quantize mask.
+	 */
+	static final int STATE_BYTES = NUMBER_OF_STEPS * (2 * Double.BYTES + 3) + Short.BYTES;
 	public static int GATE_NOMUTE = 0;
 	public static int GATE_BUTTON_MUTE = 1;
 	public static int GATE_QUANTIZE_MUTE = 2;
@@ -31,16 +39,13 @@ public class ArpInstance {
 	private final int[] offsetNote = new int[NUMBER_OF_STEPS];
 	private String identifier;
 
-	private final boolean quanitze[] = new boolean[12];
+	private final ScaleQuantizer scale = new ScaleQuantizer();
 	private final ArpParameterContainer parameterContainer;
 	private QuantizeMode quantizeMode;
 
 	public ArpInstance(final String identifier, final ArpParameterContainer paramContainer, final QuantizeMode mode) {
 		this.identifier = identifier;
 		this.parameterContainer = paramContainer;
-		for (int i = 0; i < 12; i++) {
-			quanitze[i] = true;
-		}
 		this.quantizeMode = mode;
 	}
 
@@ -160,11 +165,13 @@ public class ArpInstance {
 	public void setBaseNote(final int index, final int value) {
 		this.baseNote[index] = value;
 		updateNoteMuteState(index);
+		parameterContainer.arpStateChanged(this);
 	}
 
 	public void setOffsetNote(final int index, final int value) {
 		this.offsetNote[index] = value;
 		updateNoteMuteState(index);
+		parameterContainer.arpStateChanged(this);
 	}
 
 	/**
@@ -178,8 +185,7 @@ public class ArpInstance {
 		if (quantizeMode == QuantizeMode.MUTE) {
 			return (Math.min(Math.max(-24, baseNote[index] + offsetNote[index]), 24) + 24.0) / 48.0;
 		} else {
-			final int sum = Math.min(Math.max(-24, baseNote[index] + offsetNote[index]), 24);
-			return (quantizeToNearest(sum) + 24) / 48;
+			return (scale.nearest(baseNote[index] + offsetNote[index]) + 24.0) / 48.0;
 		}
 	}
 
@@ -190,30 +196,7 @@ public class ArpInstance {
 	 * @return true if note (offset + base) in scale
 	 */
 	private boolean inScale(final int index) {
-		final int value = Math.min(Math.max(-24, baseNote[index] + offsetNote[index]), 24);
-		return quanitze[(value + 24) % 12];
-	}
-
-	private double quantizeToNearest(final int value) {
-		final int nv = (value + 24) % 12;
-		if (quanitze[nv]) {
-			return value;
-		}
-		int vu = value;
-		while (vu < 24) {
-			if (quanitze[(vu + 24) % 12]) {
-				return vu;
-			}
-			vu++;
-		}
-		vu = value;
-		while (vu > -25) {
-			if (quanitze[(vu + 24) % 12]) {
-				return vu;
-			}
-			vu--;
-		}
-		return value;
+		return scale.allows(Math.min(Math.max(-24, baseNote[index] + offsetNote[index]), 24));
 	}
 
 	public double getStoredVelocity(final int index) {
@@ -222,6 +205,7 @@ public class ArpInstance {
 
 	public void storeVelocity(final int index, final double d) {
 		storedVelocities[index] = d;
+		parameterContainer.arpStateChanged(this);
 	}
 
 	public double getStoredGate(final int index) {
@@ -230,6 +214,7 @@ public class ArpInstance {
 
 	public void storeGate(final int index, final double d) {
 		storedGates[index] = d;
+		parameterContainer.arpStateChanged(this);
 	}
 
 	public int getGateMute(final int index) {
@@ -238,18 +223,55 @@ public class ArpInstance {
 
 	private int toggleGateButtonMuteState(final int index) {
 		gateMuteState[index] ^= GATE_BUTTON_MUTE;
+		parameterContainer.arpStateChanged(this);
 		return gateMuteState[index];
 	}
 
 	public boolean isQuantizeNoteSet(final int note) {
-		return quanitze[note];
+		return scale.isNoteSet(note);
 	}
 
 	public void toggleQuantizeNote(final int note) {
-		quanitze[note] = !quanitze[note];
+		scale.toggleNote(note);
 		for (int i = 0; i < NUMBER_OF_STEPS; i++) {
 			updateNoteMuteState(i);
 		}
+		parameterContainer.arpStateChanged(this);
+	}
+
+	/**
+	 * Pack the state that is not kept by the device into {@link #STATE_BYTES} bytes.
+	 *
+	 * @param buffer target buffer, written from its current position
+	 */
+	@Override
+	public void writeState(final ByteBuffer buffer) {
+		for (int i = 0; i < NUMBER_OF_STEPS; i++) {
+			buffer.putDouble(storedVelocities[i]);
+			buffer.putDouble(storedGates[i]);
+			buffer.put((byte) gateMuteState[i]);
+			buffer.put((byte) baseNote[i]);
+			buffer.put((byte) offsetNote[i]);
+		}
+		buffer.putShort((short) scale.getMask());
+	}
+
+	/**
+	 * Restore state written by {@link #writeState(ByteBuffer)}. Only the instance is updated; the device
+	 * parameters are stored with the project by Bitwig itself.
+	 *
+	 * @param buffer source buffer, read from its current position
+	 */
+	@Override
+	public void readState(final ByteBuffer buffer) {
+		for (int i = 0; i < NUMBER_OF_STEPS; i++) {
+			storedVelocities[i] = buffer.getDouble();
+			storedGates[i] = buffer.getDouble();
+			gateMuteState[i] = buffer.get();
+			baseNote[i] = buffer.get();
+			offsetNote[i] = buffer.get();
+		}
+		scale.setMask(buffer.getShort());
 	}
 
 	private void updateNoteMuteState(final int index) {
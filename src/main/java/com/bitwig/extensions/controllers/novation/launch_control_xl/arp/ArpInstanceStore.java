@@ -0,0 +1,229 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.arp;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.bitwig.extension.controller.api.ControllerHost;
+import com.bitwig.extension.controller.api.DocumentState;
+import com.bitwig.extension.controller.api.SettableStringValue;
+import com.bitwig.extension.controller.api.Setting;
+
+/**
+ * Persists the state of arp instances in a hidden project setting. Used for the {@link ArpInstance}s of
+ * {@link LpcArpControlExtension} and for the {@link ArpStepState}s of the Template 8 arp layer.
+ * <p>
+ * The setting holds one base64 string. The decoded bytes are a version byte and an instance count (short),
+ * then for each instance its key (short length + UTF-8 bytes) and a fixed number of bytes of packed state.
+ * The packed state of each instance is cached, so a flush only re-packs instances that changed. Changes are
+ * batched: the first change schedules a flush after {@link #FLUSH_DELAY_MS}, and later changes are collected
+ * until then.
+ * <p>
+ * Instances that were restored are remembered, so a value that arrives later (project load, project switch)
+ * is applied to them as well and is not overwritten by their defaults.
+ *
+ * @param <T> type of the persisted instances
+ */
+public class ArpInstanceStore<T extends ArpInstanceStore.Entry> {
+
+   /** State kept in the store: an identifier and a fixed number of packed bytes. */
+   public interface Entry {
+      String getIdentifier();
+
+      /**
+       * @param buffer target buffer, written from its current position
+       */
+      void writeState(ByteBuffer buffer);
+
+      /**
+       * @param buffer source buffer, read from its current position
+       */
+      void readState(ByteBuffer buffer);
+   }
+
+   private static final byte VERSION = 1;
+   private static final int FLUSH_DELAY_MS = 1000;
+   private static final int MAX_STATE_CHARS = 65536;
+
+   private final ControllerHost host;
+   private final SettableStringValue setting;
+   private final int stateBytes;
+   private final Map<String, byte[]> packedStates = new HashMap<>();
+   private final Map<String, T> instances = new HashMap<>();
+   private final Set<T> dirtyInstances = new LinkedHashSet<>();
+   private String lastWritten = "";
+   private boolean flushScheduled = false;
+
+   /**
+    * @param label      name of the hidden document setting
+    * @param stateBytes size of the packed state of one instance
+    */
+   public ArpInstanceStore(final ControllerHost host, final DocumentState documentState, final String label,
+      final int stateBytes) {
+      this.host = host;
+      this.stateBytes = stateBytes;
+      setting = documentState.getStringSetting(label, "Arp", MAX_STATE_CHARS, "");
+      ((Setting) setting).hide();
+      setting.addValueObserver(this::load);
+   }
+
+   /**
+    * Restore the stored state of an instance, if there is one for its identifier. The instance is also
+    * restored again when the stored value changes later.
+    *
+    * @param instance freshly created instance
+    * @return true if state was restored
+    */
+   public boolean restore(final T instance) {
+      instances.put(instance.getIdentifier(), instance);
+      final byte[] packed = packedStates.get(instance.getIdentifier());
+      if (packed == null) {
+         return false;
+      }
+      instance.readState(ByteBuffer.wrap(packed));
+      return true;
+   }
+
+   /**
+    * Mark an instance as changed; it will be written with the next batched flush.
+    *
+    * @param instance the changed instance
+    */
+   public void markDirty(final T instance) {
+      dirtyInstances.add(instance);
+      scheduleFlush();
+   }
+
+   /**
+    * Move stored state to a new key when an instance is renamed.
+    *
+    * @param oldKey previous identifier
+    * @param instance the renamed instance
+    */
+   public void rename(final String oldKey, final T instance) {
+      packedStates.remove(oldKey);
+      instances.remove(oldKey, instance);
+      instances.put(instance.getIdentifier(), instance);
+      markDirty(instance);
+   }
+
+   /**
+    * Stop tracking an instance that is no longer kept in memory. Its last written state stays stored.
+    *
+    * @param instance the dropped instance
+    */
+   public void forget(final T instance) {
+      if (dirtyInstances.remove(instance)) {
+         packInstance(instance);
+         scheduleFlush();
+      }
+      instances.remove(instance.getIdentifier(), instance);
+   }
+
+   /**
+    * Stop tracking an instance whose device is gone, dropping changes not written yet. The stored state is
+    * kept, since the device may vanish because another project was opened.
+    *
+    * @param instance the removed instance
+    */
+   public void remove(final T instance) {
+      dirtyInstances.remove(instance);
+      instances.remove(instance.getIdentifier(), instance);
+   }
+
+   private void scheduleFlush() {
+      if (!flushScheduled) {
+         flushScheduled = true;
+         host.scheduleTask(this::flush, FLUSH_DELAY_MS);
+      }
+   }
+
+   private void flush() {
+      flushScheduled = false;
+      for (final T instance : dirtyInstances) {
+         packInstance(instance);
+      }
+      dirtyInstances.clear();
+
+      final String encoded = encode();
+      if (!encoded.equals(lastWritten)) {
+         lastWritten = encoded;
+         setting.set(encoded);
+      }
+   }
+
+   private void packInstance(final T instance) {
+      final ByteBuffer buffer = ByteBuffer.allocate(stateBytes);
+      instance.writeState(buffer);
+      packedStates.put(instance.getIdentifier(), buffer.array());
+   }
+
+   private String encode() {
+      if (packedStates.isEmpty()) {
+         return "";
+      }
+      int size = Byte.BYTES + Short.BYTES;
+      final byte[][] keys = new byte[packedStates.size()][];
+      int index = 0;
+      for (final String key : packedStates.keySet()) {
+         keys[index] = key.getBytes(StandardCharsets.UTF_8);
+         size += Short.BYTES + keys[index].length + stateBytes;
+         index++;
+      }
+
+      final ByteBuffer buffer = ByteBuffer.allocate(size);
+      buffer.put(VERSION);
+      buffer.putShort((short) packedStates.size());
+      index = 0;
+      for (final byte[] packed : packedStates.values()) {
+         buffer.putShort((short) keys[index].length);
+         buffer.put(keys[index]);
+         buffer.put(packed);
+         index++;
+      }
+      return Base64.getEncoder().encodeToString(buffer.array());
+   }
+
+   private void load(final String value) {
+      if (value == null || value.equals(lastWritten)) {
+         return;
+      }
+      // A different project: changes not written yet belong to the previous one.
+      dirtyInstances.clear();
+      packedStates.clear();
+      lastWritten = value;
+      if (value.isEmpty()) {
+         return;
+      }
+      try {
+         final ByteBuffer buffer = ByteBuffer.wrap(Base64.getDecoder().decode(value));
+         if (buffer.get() != VERSION) {
+            return;
+         }
+         final int count = buffer.getShort();
+         for (int i = 0; i < count; i++) {
+            final byte[] key = new byte[buffer.getShort()];
+            buffer.get(key);
+            final byte[] packed = new byte[stateBytes];
+            buffer.get(packed);
+            packedStates.put(new String(key, StandardCharsets.UTF_8), packed);
+         }
+      } catch (final IllegalArgumentException | BufferUnderflowException e) {
+         // Unreadable state (older or damaged project); start from scratch
+         packedStates.clear();
+         return;
+      }
+      // Instances created before the value arrived get their stored state now.
+      for (final Map.Entry<String, T> entry : instances.entrySet()) {
+         final byte[] packed = packedStates.get(entry.getKey());
+         if (packed != null) {
+            entry.getValue().readState(ByteBuffer.wrap(packed));
+         }
+      }
+   }
+}
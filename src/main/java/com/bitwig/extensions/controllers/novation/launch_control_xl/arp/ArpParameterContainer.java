@@ -28,4 +28,13 @@ public interface ArpParameterContainer {
 	 * @param value value to be set
 	 */
 	void applyNoteValueToParameter(int index, double value);
+
+	/**
+	 * Called whenever state kept by the instance itself (stored gates/velocities, mutes, notes, quantize mask)
+	 * changes, so it can be persisted.
+	 *
+	 * @param instance the instance that changed
+	 */
+	default void arpStateChanged(final ArpInstance instance) {
+	}
 }
@@ -0,0 +1,162 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.arp;
+
+/**
+ * Eight snapshots of an Arpeggiator pattern: per step the skip, velocity, gate and transpose values plus the
+ * STEPS, RATE, MODE, GLOBAL_VEL and GLOBAL_GATE parameters, all as normalized values in one flat array.
+ * <p>
+ * The bank does not touch the device itself. A recall is handed out in batches through
+ * {@link #recallNext(Writer, int)}, so the caller can spread it over several host ticks. A morph writes the
+ * interpolation between two snapshots, visiting only the parameters in which the two differ.
+ */
+final class ArpSnapshotBank {
+
+   /** Receives the parameter values of a recall or morph. */
+   @FunctionalInterface
+   interface Writer {
+      void write(int parameter, double value);
+   }
+
+   static final int SLOTS = 8;
+
+   static final int SKIP = 0;
+   static final int VELOCITY = SKIP + ArpStepState.STEPS;
+   static final int GATE = VELOCITY + ArpStepState.STEPS;
+   static final int TRANSPOSE = GATE + ArpStepState.STEPS;
+   static final int STEP_COUNT = TRANSPOSE + ArpStepState.STEPS;
+   static final int RATE = STEP_COUNT + 1;
+   static final int MODE = RATE + 1;
+   static final int GLOBAL_VELOCITY = MODE + 1;
+   static final int GLOBAL_GATE = GLOBAL_VELOCITY + 1;
+   static final int PARAMETERS = GLOBAL_GATE + 1;
+
+   private final double[] values = new double[SLOTS * PARAMETERS];
+   private final boolean[] stored = new boolean[SLOTS];
+   private final int[] morphParameters = new int[PARAMETERS];
+   private int morphParameterCount;
+   private int morphFrom = -1;
+   private int morphTo = -1;
+   private int recallSlot = -1;
+   private int recallNext;
+
+   /**
+    * Skip, step count, rate and mode have no values in between; a morph switches them halfway.
+    */
+   static boolean isDiscrete(final int parameter) {
+      return parameter < VELOCITY || (parameter >= STEP_COUNT && parameter <= MODE);
+   }
+
+   boolean isStored(final int slot) {
+      return stored[slot];
+   }
+
+   double get(final int slot, final int parameter) {
+      return values[slot * PARAMETERS + parameter];
+   }
+
+   void set(final int slot, final int parameter, final double value) {
+      values[slot * PARAMETERS + parameter] = value;
+   }
+
+   /** Mark a slot as holding a complete snapshot once all of its values have been set. */
+   void markStored(final int slot) {
+      stored[slot] = true;
+      if (slot == morphFrom || slot == morphTo) {
+         updateMorphParameters();
+      }
+   }
+
+   /** Start recalling a stored slot; replaces a recall that is still in progress. */
+   boolean beginRecall(final int slot) {
+      if (slot < 0 || slot >= SLOTS || !stored[slot]) {
+         return false;
+      }
+      recallSlot = slot;
+      recallNext = 0;
+      return true;
+   }
+
+   boolean isRecalling() {
+      return recallSlot >= 0;
+   }
+
+   /**
+    * Write the next batch of the recall in progress.
+    *
+    * @return true while parameters remain for another batch
+    */
+   boolean recallNext(final Writer writer, final int batchSize) {
+      if (recallSlot < 0) {
+         return false;
+      }
+      final int offset = recallSlot * PARAMETERS;
+      final int end = Math.min(PARAMETERS, recallNext + batchSize);
+      for (int parameter = recallNext; parameter < end; parameter++) {
+         writer.write(parameter, values[offset + parameter]);
+      }
+      recallNext = end;
+      if (end < PARAMETERS) {
+         return true;
+      }
+      recallSlot = -1;
+      return false;
+   }
+
+   void cancelRecall() {
+      recallSlot = -1;
+   }
+
+   int getMorphFrom() {
+      return morphFrom;
+   }
+
+   int getMorphTo() {
+      return morphTo;
+   }
+
+   void setMorphFrom(final int slot) {
+      morphFrom = slot;
+      updateMorphParameters();
+   }
+
+   void setMorphTo(final int slot) {
+      morphTo = slot;
+      updateMorphParameters();
+   }
+
+   boolean canMorph() {
+      return morphFrom >= 0 && morphTo >= 0 && stored[morphFrom] && stored[morphTo];
+   }
+
+   /**
+    * Write the pattern at {@code position} between the two morph snapshots (0 = from, 1 = to). Only the
+    * parameters that differ between the snapshots are written.
+    */
+   void morph(final double position, final Writer writer) {
+      if (!canMorph()) {
+         return;
+      }
+      final double t = Math.max(0, Math.min(1, position));
+      final int from = morphFrom * PARAMETERS;
+      final int to = morphTo * PARAMETERS;
+      for (int i = 0; i < morphParameterCount; i++) {
+         final int parameter = morphParameters[i];
+         final double a = values[from + parameter];
+         final double b = values[to + parameter];
+         writer.write(parameter, isDiscrete(parameter) ? (t < 0.5 ? a : b) : a + (b - a) * t);
+      }
+   }
+
+   private void updateMorphParameters() {
+      morphParameterCount = 0;
+      if (!canMorph()) {
+         return;
+      }
+      final int from = morphFrom * PARAMETERS;
+      final int to = morphTo * PARAMETERS;
+      for (int parameter = 0; parameter < PARAMETERS; parameter++) {
+         if (values[from + parameter] != values[to + parameter]) {
+            morphParameters[morphParameterCount++] = parameter;
+         }
+      }
+   }
+}
@@ -0,0 +1,79 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.arp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Controller-side step state of one Arpeggiator, as edited by {@link RhArpLayerController}: pitch offsets,
+ * gate mutes, velocity boosts and the quantize scale. Plain primitive arrays so that a switch between
+ * arps is a reference swap.
+ */
+final class ArpStepState implements ArpInstanceStore.Entry {
+
+   static final int STEPS = 16;
+   /** Five double and three boolean arrays, the scale mask and preset (shorts) and the root (byte). */
+   static final int STATE_BYTES = STEPS * (5 * Double.BYTES + 3) + 2 * Short.BYTES + 1;
+
+   final double[] knobPitchOffsets = new double[STEPS];
+   final double[] sliderPitchOffsets = new double[STEPS];
+   final double[] storedVelocityValues = new double[STEPS];
+   final boolean[] velocityBoostEnabled = new boolean[STEPS];
+   final double[] storedGateValues = new double[STEPS];
+   final boolean[] gateMuted = new boolean[STEPS];
+   final ScaleQuantizer scale = new ScaleQuantizer();
+   final boolean[] quantizeMutedSteps = new boolean[STEPS];
+   final double[] quantizeStoredGates = new double[STEPS];
+   /** Steps whose quantize mute still has to follow a scale change made while they were not visible. */
+   final boolean[] quantizePending = new boolean[STEPS];
+   /** Key of the state in the project, or null while the state is not persisted. */
+   String identifier;
+
+   @Override
+   public String getIdentifier() {
+      return identifier;
+   }
+
+   /**
+    * Pack everything but {@link #quantizePending} into {@link #STATE_BYTES} bytes. A restored state marks
+    * every step pending, so the quantize mutes are checked against the device once a page is shown.
+    */
+   @Override
+   public void writeState(final ByteBuffer buffer) {
+      for (int i = 0; i < STEPS; i++) {
+         buffer.putDouble(knobPitchOffsets[i]);
+         buffer.putDouble(sliderPitchOffsets[i]);
+         buffer.putDouble(storedVelocityValues[i]);
+         buffer.putDouble(storedGateValues[i]);
+         buffer.putDouble(quantizeStoredGates[i]);
+         buffer.put((byte)(velocityBoostEnabled[i] ? 1 : 0));
+         buffer.put((byte)(gateMuted[i] ? 1 : 0));
+         buffer.put((byte)(quantizeMutedSteps[i] ? 1 : 0));
+      }
+      buffer.putShort((short)scale.getMask());
+      buffer.putShort((short)scale.getPreset());
+      buffer.put((byte)scale.getRoot());
+   }
+
+   @Override
+   public void readState(final ByteBuffer buffer) {
+      for (int i = 0; i < STEPS; i++) {
+         knobPitchOffsets[i] = buffer.getDouble();
+         sliderPitchOffsets[i] = buffer.getDouble();
+         storedVelocityValues[i] = buffer.getDouble();
+         storedGateValues[i] = buffer.getDouble();
+         quantizeStoredGates[i] = buffer.getDouble();
+         velocityBoostEnabled[i] = buffer.get() != 0;
+         gateMuted[i] = buffer.get() != 0;
+         quantizeMutedSteps[i] = buffer.get() != 0;
+         quantizePending[i] = true;
+      }
+      final int mask = buffer.getShort();
+      final int preset = buffer.getShort();
+      final int root = buffer.get();
+      if (preset == ScaleQuantizer.CUSTOM) {
+         scale.setMask(mask);
+      }
+      else {
+         scale.setPreset(preset, root);
+      }
+   }
+}
@@ -0,0 +1,120 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.arp;
+
+import java.util.Arrays;
+
+/**
+ * Bounded least-recently-used cache of {@link ArpStepState}s in a fixed number of entries, keyed by device
+ * position. The arp slot holding a device re-keys its entry through {@link #move(int, long)} when its
+ * position observers report that the device moved, so the key is the device's current position and not the
+ * position it was first seen at. When more than {@code capacity} arps have been visited, the entry used
+ * longest ago is reused and its arp starts from its persisted state the next time it is focused.
+ * <p>
+ * A generation counter per entry lets holders of an entry index notice that it was reused or released.
+ */
+final class ArpStepStateCache {
+
+   private final long[] keys;
+   private final long[] lastUsed;
+   private final int[] generations;
+   private final ArpStepState[] states;
+   private long useCount;
+
+   ArpStepStateCache(final int capacity) {
+      this.keys = new long[capacity];
+      this.lastUsed = new long[capacity];
+      this.generations = new int[capacity];
+      this.states = new ArpStepState[capacity];
+      Arrays.fill(keys, -1);
+   }
+
+   /**
+    * @param key device identity, see {@link #key(int, int)}
+    * @return the entry holding the device, or -1
+    */
+   int find(final long key) {
+      for (int entry = 0; entry < keys.length; entry++) {
+         if (keys[entry] == key && states[entry] != null) {
+            return entry;
+         }
+      }
+      return -1;
+   }
+
+   /** @return an unused entry, or else the one used longest ago */
+   int leastRecentlyUsed() {
+      int oldest = 0;
+      for (int entry = 0; entry < keys.length; entry++) {
+         if (states[entry] == null) {
+            return entry;
+         }
+         if (lastUsed[entry] < lastUsed[oldest]) {
+            oldest = entry;
+         }
+      }
+      return oldest;
+   }
+
+   /**
+    * Put a fresh state for a device into an entry, replacing what it held.
+    *
+    * @return the new state
+    */
+   ArpStepState allocate(final int entry, final long key) {
+      keys[entry] = key;
+      states[entry] = new ArpStepState();
+      generations[entry]++;
+      touch(entry);
+      return states[entry];
+   }
+
+   void touch(final int entry) {
+      lastUsed[entry] = ++useCount;
+   }
+
+   /** The device of an entry moved to another position. */
+   void move(final int entry, final long key) {
+      keys[entry] = key;
+   }
+
+   /** The device of an entry is gone; the entry is free again. */
+   void release(final int entry) {
+      keys[entry] = -1;
+      states[entry] = null;
+      generations[entry]++;
+   }
+
+   /** @return the state of an entry, or null if it is free */
+   ArpStepState state(final int entry) {
+      return states[entry];
+   }
+
+   long key(final int entry) {
+      return keys[entry];
+   }
+
+   int generation(final int entry) {
+      return generations[entry];
+   }
+
+   int capacity() {
+      return keys.length;
+   }
+
+   int size() {
+      int size = 0;
+      for (final ArpStepState state : states) {
+         if (state != null) {
+            size++;
+         }
+      }
+      return size;
+   }
+
+   /**
+    * Identity of a device as its track position and its position in the track's device chain, the same
+    * pair the device locator uses to remember a hit.
+    */
+   static long key(final int trackPosition, final int devicePosition) {
+      return ((long)trackPosition << 32) | (devicePosition & 0xFFFFFFFFL);
+   }
+}
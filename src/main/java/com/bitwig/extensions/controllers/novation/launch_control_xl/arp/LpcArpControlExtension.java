@@ -3,7 +3,6 @@ package com.bitwig.extensions.controllers.novation.launch_control_xl.arp;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.UUID;
 
 import com.bitwig.extension.api.util.midi.ShortMidiMessage;
 import com.bitwig.extension.callback.ShortMidiMessageReceivedCallback;
@@ -22,6 +21,7 @@ import com.bitwig.extension.controller.api.PinnableCursorDevice;
 import com.bitwig.extension.controller.api.SettableEnumValue;
 import com.bitwig.extension.controller.api.SpecificBitwigDevice;
 import com.bitwig.extension.controller.api.TrackBank;
+import com.bitwig.extensions.controllers.novation.launch_control_xl.support.DeviceIdentity;
 import com.bitwig.extensions.debug.RemoteConsole;
 import com.bitwig.extensions.framework.Layers;
 
@@ -52,6 +52,7 @@ public class LpcArpControlExtension extends ControllerExtension implements ArpPa
 	private ArpInstance currentArp = null;
 
 	private final HashMap<String, ArpInstance> arpInstances = new HashMap<>();
+	private ArpInstanceStore<ArpInstance> arpInstanceStore;
 
 	private String currentTrackName = "";
 	private int currentTrackIndex = -1;
@@ -69,6 +70,9 @@ public class LpcArpControlExtension extends ControllerExtension implements ArpPa
 	private CursorTrack cursorTrack;
 	private SettableEnumValue quantizeMode;
 	private ArrayList<Parameter> arpSkipStepParameters;
+	private ParameterWriteBuffer parameterWrites;
+	private final int[] gateWriteIds = new int[16];
+	private final int[] noteWriteIds = new int[16];
 
 	protected LpcArpControlExtension(final LpcArpControlExtensionDefinition definition, final ControllerHost host) {
 		super(definition, host);
@@ -97,9 +101,11 @@ public class LpcArpControlExtension extends ControllerExtension implements ArpPa
 		cursorTrack.name().addValueObserver(s -> {
 			currentTrackName = s;
 		});
-		cursorDevice.name().addValueObserver(s -> {
-			RemoteConsole.out.println("Device Selected = {} {}", s, cursorDevice.presetName().get());
-			if (s.equals("Arpeggiator")) {
+		setUpArpDevice(cursorDevice);
+		// Recognise the Arpeggiator by its device identity, so renamed or localized instances still work
+		arpdevice.createParameter(DeviceIdentity.ARPEGGIATOR_PROBE_PARAMETER).exists().addValueObserver(isArp -> {
+			RemoteConsole.out.println("Arpeggiator selected = {} {}", isArp, cursorDevice.presetName().get());
+			if (isArp) {
 				arpSelected = true;
 				currentMode.activate();
 				selectArpInstance(currentTrackIndex, cursorDevice.presetName().get());
@@ -117,7 +123,6 @@ public class LpcArpControlExtension extends ControllerExtension implements ArpPa
 				selectArpInstance(currentTrackIndex, pn);
 			}
 		});
-		setUpArpDevice(cursorDevice);
 		setUpKnobs();
 		for (int i = 0; i < 8; i++) {
 			focusButtons[i] = new RedGreenButton(this, "FOCUS", i, TRACK_FOCUS_NOTE[i], BASE_CHANNEL);
@@ -125,6 +130,7 @@ public class LpcArpControlExtension extends ControllerExtension implements ArpPa
 		}
 
 		final DocumentState documentState = getHost().getDocumentState();
+		arpInstanceStore = new ArpInstanceStore<>(host, documentState, "Arp instances", ArpInstance.STATE_BYTES);
 		quantizeMode = documentState.getEnumSetting("Modes", //
 				"Quantize",
 				new String[] { QuantizeMode.MUTE.getDescriptor(), QuantizeMode.NEAREST_VALUE.getDescriptor() },
@@ -290,6 +296,7 @@ public class LpcArpControlExtension extends ControllerExtension implements ArpPa
 			if (inst == null) {
 				// RemoteConsole.out.println("Create Arp Instance {}", key);
 				currentArp = new ArpInstance(key, this, QuantizeMode.toMode(quantizeMode.get()));
+				arpInstanceStore.restore(currentArp);
 				arpInstances.put(key, currentArp);
 			} else {
 				// RemoteConsole.out.println("Reselect ARP");
@@ -299,31 +306,40 @@ public class LpcArpControlExtension extends ControllerExtension implements ArpPa
 		} else if (!currentArp.getIdentifier().equals(key)) {
 			// RemoteConsole.out.println("RENAME {} --> {}", currentArp.getIdentifier(),
 			// presetName);
-			arpInstances.remove(currentArp.getIdentifier());
+			final String oldKey = currentArp.getIdentifier();
+			arpInstances.remove(oldKey);
 			currentArp.setIdentifier(presetName);
 			arpInstances.put(key, currentArp);
+			arpInstanceStore.rename(oldKey, currentArp);
 		}
 
 	}
 
+	@Override
+	public void arpStateChanged(final ArpInstance instance) {
+		if (arpInstanceStore != null) {
+			arpInstanceStore.markDirty(instance);
+		}
+	}
+
 	@Override
 	public void applyGateValueToParameter(final int index, final double value) {
 		if (index < arpGateParams.size()) {
-			arpGateParams.get(index).value().set(value);
+			parameterWrites.set(gateWriteIds[index], value);
 		}
 	}
 
 	@Override
 	public void applyNoteValueToParameter(final int index, final double value) {
 		if (index < arpGateParams.size()) {
-			arpNoteParams.get(index).value().set(value);
+			parameterWrites.set(noteWriteIds[index], value);
 		}
 	}
 
 	@Override
 	public double getGateValue(final int index) {
 		if (index < arpGateParams.size()) {
-			return arpGateParams.get(index).value().get();
+			return parameterWrites.get(gateWriteIds[index]);
 		}
 		return 0.0;
 	}
@@ -363,7 +379,7 @@ public class LpcArpControlExtension extends ControllerExtension implements ArpPa
 				if (currentArp != null) {
 					final int value = (int) (-24 + 48 * v);
 					currentArp.setOffsetNote(index, value);
-					arpNoteParams.get(index).value().set(currentArp.getNoteValue(index));
+					applyNoteValueToParameter(index, currentArp.getNoteValue(index));
 				}
 			});
 		}
@@ -398,19 +414,20 @@ public class LpcArpControlExtension extends ControllerExtension implements ArpPa
 				if (currentArp != null) {
 					final int value = (int) (-24 + 48 * v);
 					currentArp.setBaseNote(index, value);
-					arpNoteParams.get(index).value().set(currentArp.getNoteValue(index));
+					applyNoteValueToParameter(index, currentArp.getNoteValue(index));
 				}
 			});
 		}
 	}
 
 	private void setUpArpDevice(final PinnableCursorDevice cursorDevice) {
-		arpdevice = cursorDevice.createSpecificBitwigDevice(UUID.fromString("4d407a2b-c91b-4e4c-9a89-c53c19fe6251"));
+		arpdevice = cursorDevice.createSpecificBitwigDevice(DeviceIdentity.ARPEGGIATOR_ID);
 
 		arpGateParams = new ArrayList<>();
 		arpNoteParams = new ArrayList<>();
 		arpVelocityParams = new ArrayList<>();
 		arpSkipStepParameters = new ArrayList<>();
+		parameterWrites = new ParameterWriteBuffer(getHost(), 32);
 		for (int i = 0; i < 16; i++) {
 			final Parameter gate = arpdevice.createParameter("GATE_" + (i + 1));
 			final Parameter velocity = arpdevice.createParameter("STEP_" + (i + 1));
@@ -422,6 +439,8 @@ public class LpcArpControlExtension extends ControllerExtension implements ArpPa
 			skip.markInterested();
 			arpGateParams.add(gate);
 			arpNoteParams.add(note);
+			gateWriteIds[i] = parameterWrites.register(gate);
+			noteWriteIds[i] = parameterWrites.register(note);
 			arpVelocityParams.add(velocity);
 			arpSkipStepParameters.add(skip);
 		}
@@ -566,6 +585,7 @@ public class LpcArpControlExtension extends ControllerExtension implements ArpPa
 
 	@Override
 	public void flush() {
+		parameterWrites.flush();
 		surface.updateHardware();
 	}
 
@@ -0,0 +1,82 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.arp;
+
+import com.bitwig.extension.controller.api.ControllerHost;
+import com.bitwig.extension.controller.api.Parameter;
+
+/**
+ * Coalesces parameter writes within one host cycle. Writes only record the value; {@link #flush()} sends the
+ * last value of each written parameter once, so Bitwig's undo history and automation see one change per
+ * gesture instead of every intermediate value.
+ * <p>
+ * Parameters are registered once and addressed by the returned id. Values are held in a primitive array
+ * and the written ids in a list, so a flush only visits parameters that were written.
+ */
+public class ParameterWriteBuffer {
+
+   private final ControllerHost host;
+   private final Parameter[] parameters;
+   private final double[] values;
+   private final boolean[] pending;
+   private final int[] written;
+   private int writtenCount;
+   private int size;
+   private long suppressedWrites;
+
+   public ParameterWriteBuffer(final ControllerHost host, final int capacity) {
+      this.host = host;
+      this.parameters = new Parameter[capacity];
+      this.values = new double[capacity];
+      this.pending = new boolean[capacity];
+      this.written = new int[capacity];
+   }
+
+   /**
+    * @param parameter parameter to write through this buffer
+    * @return id used with {@link #set(int, double)} and {@link #get(int)}
+    */
+   public int register(final Parameter parameter) {
+      if (size == parameters.length) {
+         throw new IllegalStateException("Parameter write buffer is full (" + size + ")");
+      }
+      parameters[size] = parameter;
+      return size++;
+   }
+
+   /**
+    * Record a normalized value; it replaces a value written earlier in the same cycle.
+    */
+   public void set(final int id, final double value) {
+      values[id] = value;
+      if (pending[id]) {
+         suppressedWrites++;
+         return;
+      }
+      pending[id] = true;
+      written[writtenCount++] = id;
+      if (writtenCount == 1) {
+         host.requestFlush();
+      }
+   }
+
+   /**
+    * @return the value written in this cycle, or the parameter's reported value if there is none
+    */
+   public double get(final int id) {
+      return pending[id] ? values[id] : parameters[id].value().get();
+   }
+
+   /** Send the pending values; call once per host flush. */
+   public void flush() {
+      for (int i = 0; i < writtenCount; i++) {
+         final int id = written[i];
+         pending[id] = false;
+         parameters[id].value().set(values[id]);
+      }
+      writtenCount = 0;
+   }
+
+   /** @return number of writes that were replaced by a later write in the same cycle */
+   public long getSuppressedWrites() {
+      return suppressedWrites;
+   }
+}
@@ -1,17 +1,12 @@
 package com.bitwig.extensions.controllers.novation.launch_control_xl.arp;
 
+import com.bitwig.extension.controller.api.Channel;
 import com.bitwig.extension.controller.api.ControllerHost;
-import com.bitwig.extension.controller.api.CursorTrack;
-import com.bitwig.extension.controller.api.IntegerValue;
+import com.bitwig.extension.controller.api.Device;
 import com.bitwig.extension.controller.api.Parameter;
-import com.bitwig.extension.controller.api.PinnableCursorDevice;
-import com.bitwig.extension.controller.api.SpecificBitwigDevice;
 import com.bitwig.extensions.controllers.novation.common.SimpleLedColor;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.List;
-import java.util.UUID;
 
 /**
  * Mini controller that toggles Arpeggiator steps when the arp layer is active.
@@ -22,6 +17,28 @@ public final class RhArpLayerController {
    private static final double[] GLOBAL_GATE_VALUES = {0, 0.5, 0.75, 1.0, 1.5, 2.0, 3.0, 4.0};
    private static final int[] QUANTIZE_FOCUS_NOTES = {-1, 1, 3, -1, 6, 8, 10, -1};
    private static final int[] QUANTIZE_CONTROL_NOTES = {0, 2, 4, 5, 7, 9, 11, 0};
+   private static final String[] NOTE_NAMES = {"C", "C#", "D", "D#", "E", "F", "F#", "G", "G#", "A", "A#", "B"};
+   /** Number of arps whose step state is kept; older ones start fresh when focused again. */
+   private static final int STEP_STATE_CACHE_SIZE = 16;
+   /** The hardware shows one page of 8 steps at a time. */
+   private static final int PAGE_SIZE = 8;
+   private static final int PAGE_COUNT = ArpStepState.STEPS / PAGE_SIZE;
+   /** Time for the parameters of a newly subscribed page to report their values. */
+   private static final int PAGE_SETTLE_MS = 100;
+   /** A snapshot recall writes this many parameters per tick. */
+   private static final int RECALL_BATCH_SIZE = 24;
+   private static final int RECALL_TICK_MS = 10;
+   /** Minimum time between two morph writes. */
+   private static final int MORPH_INTERVAL_MS = 40;
+   /** Slider that morphs between snapshots in morph mode. */
+   private static final int MORPH_SLIDER = 7;
+   /**
+    * The playhead moves at most this often; at fast rates (1/64 at high tempo) it skips steps rather than
+    * sending an LED update for each one.
+    */
+   private static final int PLAYHEAD_MIN_INTERVAL_MS = 30;
+   /** Number of Arpeggiators the layer can switch between without moving Bitwig's selection. */
+   private static final int SLOT_COUNT = 4;
 
    private enum MatrixMode
    {
@@ -31,87 +48,392 @@ public final class RhArpLayerController {
       TIMING,
       PATTERN,
       VELOCITY_GATE,
-      QUANTIZE
+      QUANTIZE,
+      MORPH
    }
 
    private final ControllerHost host;
-   private final List<Parameter> skipParameters = new ArrayList<>();
-   private final List<Parameter> velocityParameters = new ArrayList<>();
-   private final List<Parameter> gateParameters = new ArrayList<>();
-   private final List<Parameter> transposeParameters = new ArrayList<>();
-   private final CursorTrack cursorTrack;
-   private final PinnableCursorDevice cursorDevice;
-   private final SpecificBitwigDevice arpDevice;
-   private final Parameter octavesParameter;
-   private final Parameter stepsParameter;
-   private final IntegerValue stepPosition;
-   private final Parameter globalVelocityParameter;
-   private final Parameter globalGateParameter;
-   private final Parameter rateModeParameter;
-   private final Parameter shuffleParameter;
-   private final Parameter rateParameter;
-   private final Parameter retriggerParameter;
-   private final Parameter modeParameter;
-   private final double[] knobPitchOffsets = new double[8];
-   private final double[] sliderPitchOffsets = new double[8];
-   private final double[] storedVelocityValues = new double[8];
-   private final boolean[] velocityBoostEnabled = new boolean[8];
-   private final double[] storedGateValues = new double[8];
-   private final boolean[] gateMuted = new boolean[8];
-   private final boolean[] quantizeNotes = new boolean[12];
-   private final boolean[] quantizeMutedSteps = new boolean[8];
-   private final double[] quantizeStoredGates = new double[8];
+   private final ArpDeviceSlot[] slots = new ArpDeviceSlot[SLOT_COUNT];
+   private final ArpSnapshotBank snapshots = new ArpSnapshotBank();
+   private final ArpSnapshotBank.Writer snapshotWriter;
+   private final StepEditLog.Target editTarget;
+   private final ArpStepStateCache stepStates = new ArpStepStateCache(STEP_STATE_CACHE_SIZE);
+   private final ArpInstanceStore<ArpStepState> stateStore;
+   private ArpDeviceSlot slot;
+   private ArpStepState state = new ArpStepState();
+   private int stepPage;
+   private int lastRecalledSnapshot = -1;
+   private boolean recallScheduled;
+   /** Slot whose hidden step page is subscribed for a running recall. */
+   private ArpDeviceSlot recallSource;
+   /** Slot whose hidden step page is subscribed for a snapshot store that has not been captured yet. */
+   private ArpDeviceSlot storeSource;
+   private double morphPosition;
+   private boolean morphScheduled;
+   private boolean morphPending;
+   private boolean deviceHeld;
+   private int playheadStep = -1;
+   private long lastPlayheadMs;
+   private boolean playheadScheduled;
    private boolean active;
    private MatrixMode matrixMode = MatrixMode.DEFAULT;
 
    public RhArpLayerController(final ControllerHost host) {
       this.host = host;
-      this.cursorTrack = host.createCursorTrack(0, 0);
-      this.cursorDevice = cursorTrack.createCursorDevice();
-      this.arpDevice = cursorDevice.createSpecificBitwigDevice(UUID.fromString("4d407a2b-c91b-4e4c-9a89-c53c19fe6251"));
-      this.octavesParameter = arpDevice.createParameter("OCTAVES");
-      this.octavesParameter.markInterested();
-      setUpArpParameters();
-      this.stepsParameter = arpDevice.createParameter("STEPS");
-      this.stepsParameter.markInterested();
-      this.stepPosition = arpDevice.createIntegerOutputValue("STEP");
-      this.stepPosition.markInterested();
-      this.globalVelocityParameter = arpDevice.createParameter("GLOBAL_VEL");
-      this.globalVelocityParameter.markInterested();
-      this.globalGateParameter = arpDevice.createParameter("GLOBAL_GATE");
-      this.globalGateParameter.markInterested();
-      this.rateModeParameter = arpDevice.createParameter("RATE_MODE");
-      this.rateModeParameter.markInterested();
-      this.shuffleParameter = arpDevice.createParameter("SHUFFLE");
-      this.shuffleParameter.markInterested();
-      this.rateParameter = arpDevice.createParameter("RATE");
-      this.rateParameter.markInterested();
-      this.retriggerParameter = arpDevice.createParameter("RETRIGGER");
-      this.retriggerParameter.markInterested();
-      this.modeParameter = arpDevice.createParameter("MODE");
-      this.modeParameter.markInterested();
-      Arrays.fill(quantizeNotes, true);
-   }
-
-   private void setUpArpParameters() {
-      skipParameters.clear();
-      velocityParameters.clear();
-      gateParameters.clear();
-      transposeParameters.clear();
-      for (int i = 0; i < 16; i++) {
-         final Parameter skip = arpDevice.createParameter("SKIP_" + (i + 1));
-         skip.markInterested();
-         skipParameters.add(skip);
-         final Parameter velocity = arpDevice.createParameter("STEP_" + (i + 1));
-         velocity.markInterested();
-         velocityParameters.add(velocity);
-         final Parameter gate = arpDevice.createParameter("GATE_" + (i + 1));
-         gate.markInterested();
-         gateParameters.add(gate);
-         final Parameter transpose = arpDevice.createParameter("STEP_" + (i + 1) + "_TRANSPOSE");
-         transpose.markInterested();
-         transposeParameters.add(transpose);
+      this.stateStore = new ArpInstanceStore<>(host, host.getDocumentState(), "Arp layer steps",
+         ArpStepState.STATE_BYTES);
+      this.snapshotWriter = (parameter, value) -> slot.writes.set(slot.snapshotIds[parameter], value);
+      this.editTarget = new StepEditLog.Target() {
+         @Override
+         public void set(final int parameter, final double value) {
+            clearToggle(parameter);
+            slot.writes.set(slot.snapshotIds[parameter], value);
+         }
+
+         @Override
+         public void setRaw(final int parameter, final double raw) {
+            rawParameter(parameter).value().setRaw(raw);
+         }
+      };
+      final ArpDeviceSlot.Listener listener = new ArpDeviceSlot.Listener() {
+         @Override
+         public void slotMoved(final ArpDeviceSlot movedSlot) {
+            scheduleSettleStepState(movedSlot);
+            if (movedSlot == slot) {
+               updateStepState();
+            }
+         }
+
+         @Override
+         public void stepChanged(final ArpDeviceSlot changedSlot) {
+            if (changedSlot == slot) {
+               updatePlayhead();
+            }
+         }
+      };
+      for (int i = 0; i < SLOT_COUNT; i++) {
+         slots[i] = new ArpDeviceSlot(host, i, PAGE_SIZE, listener);
+         slots[i].setDetail(i == 0, 0);
+      }
+      this.slot = slots[0];
+   }
+
+   /**
+    * Swap in the step state of the arp in the active slot, so mutes and offsets follow the device instead of
+    * carrying over from the previously focused arp. A slot keeps its cache entry while it stays on its device,
+    * wherever the device moves; an unbound slot shows a blank state until it is bound.
+    */
+   private void updateStepState() {
+      if (isBound(slot)) {
+         stepStates.touch(slot.stateEntry);
+         if (state != stepStates.state(slot.stateEntry)) {
+            state = stepStates.state(slot.stateEntry);
+            scheduleQuantizePending();
+         }
+         return;
+      }
+      state = new ArpStepState();
+      if (slot.hasDevice() && slot.key() >= 0) {
+         // The entry was reused for another arp while the slot was in the background.
+         scheduleSettleStepState(slot);
+      }
+   }
+
+   private boolean isBound(final ArpDeviceSlot target) {
+      return target.stateEntry >= 0 && stepStates.generation(target.stateEntry) == target.stateGeneration;
+   }
+
+   /**
+    * Bind, re-key or release the cache entry of a slot once its position has settled. The position is reported
+    * one value at a time, so only the last report within {@value #PAGE_SETTLE_MS} ms is acted on.
+    */
+   private void scheduleSettleStepState(final ArpDeviceSlot target) {
+      final int lookup = ++target.stateLookup;
+      host.scheduleTask(() -> {
+         if (target.stateLookup == lookup) {
+            settleStepState(target);
+         }
+      }, PAGE_SETTLE_MS);
+   }
+
+   /**
+    * A bound slot stays on its device, so a new position is a move of that device: the entry and its project
+    * key follow it. A bound slot whose device is gone frees its entry. An unbound slot is bound to the entry of
+    * its device; a device seen for the first time gets the least recently used entry and its stored state.
+    */
+   private void settleStepState(final ArpDeviceSlot target) {
+      final long key = target.key();
+      if (isBound(target)) {
+         final int entry = target.stateEntry;
+         final ArpStepState held = stepStates.state(entry);
+         if (!target.hasDevice()) {
+            stateStore.remove(held);
+            stepStates.release(entry);
+            target.stateEntry = -1;
+         }
+         else if (key >= 0 && key != stepStates.key(entry)) {
+            // Whatever was cached for the new position belonged to a device that is no longer there.
+            final int stale = stepStates.find(key);
+            if (stale >= 0) {
+               stateStore.remove(stepStates.state(stale));
+               stepStates.release(stale);
+            }
+            final String oldIdentifier = held.identifier;
+            stepStates.move(entry, key);
+            held.identifier = identifier(key);
+            stateStore.rename(oldIdentifier, held);
+         }
+      }
+      else if (target.hasDevice() && key >= 0) {
+         int entry = stepStates.find(key);
+         if (entry >= 0) {
+            stepStates.touch(entry);
+         }
+         else {
+            entry = stepStates.leastRecentlyUsed();
+            final ArpStepState dropped = stepStates.state(entry);
+            if (dropped != null) {
+               stateStore.forget(dropped);
+            }
+            final ArpStepState fresh = stepStates.allocate(entry, key);
+            fresh.identifier = identifier(key);
+            stateStore.restore(fresh);
+         }
+         target.stateEntry = entry;
+         target.stateGeneration = stepStates.generation(entry);
       }
+      if (target == slot) {
+         updateStepState();
+      }
+   }
+
+   /** Key of a device's step state in the project. */
+   private static String identifier(final long key) {
+      return (key >>> 32) + ":" + (int)key;
+   }
+
+   /** The step state of the active slot was edited; it is written to the project with the next flush. */
+   private void stateChanged() {
+      if (state.identifier != null) {
+         stateStore.markDirty(state);
+      }
+   }
+
+   public int getSlotCount() {
+      return SLOT_COUNT;
+   }
+
+   public int getActiveSlot() {
+      return slot.index;
+   }
+
+   /** @return true if the active slot holds a device */
+   public boolean hasActiveSlotDevice() {
+      return slot.hasDevice();
+   }
+
+   /**
+    * Point the active slot at an Arpeggiator, e.g. one found by the device locator. Bitwig's own selection is
+    * not changed by the slot.
+    */
+   public void assignActiveSlot(final Channel track, final Device device) {
+      slot.assign(track, device);
+      updateStepState();
+      scheduleSettleStepState(slot);
+   }
+
+   /**
+    * Make another slot the one the hardware controls. This swaps the slot reference and the subscriptions; the
+    * LEDs are repainted right away from the slot's last known values.
+    */
+   public void selectSlot(final int index) {
+      if (!active || index < 0 || index >= SLOT_COUNT || index == slot.index) {
+         return;
+      }
+      final ArpDeviceSlot previous = slot;
+      slot = slots[index];
+      slot.setDetail(true, stepPage);
+      previous.setDetail(false, stepPage);
+      snapshots.cancelRecall();
+      playheadStep = slot.stepPosition.get();
+      updateStepState();
+      host.requestFlush();
+      host.showPopupNotification(slot.hasDevice()
+         ? "Launch Control XL: arp slot %d (%s)".formatted(index + 1, slot.trackName())
+         : "Launch Control XL: arp slot %d (empty)".formatted(index + 1));
+   }
+
+   public int getStepPage() {
+      return stepPage;
+   }
+
+   public int getStepPageCount() {
+      return PAGE_COUNT;
+   }
+
+   /**
+    * Show steps {@code page * 8 + 1} to {@code page * 8 + 8} on the hardware. Only the step parameters of the
+    * visible page are subscribed, so a flip swaps the subscriptions of one page for the other.
+    */
+   public void selectStepPage(final int page) {
+      if (!active || page < 0 || page >= PAGE_COUNT || page == stepPage) {
+         return;
+      }
+      slot.setPageSubscribed(page, true);
+      slot.setPageSubscribed(stepPage, false);
+      stepPage = page;
+      host.showPopupNotification("Launch Control XL: arp steps %d-%d".formatted(page * PAGE_SIZE + 1,
+         (page + 1) * PAGE_SIZE));
+      scheduleQuantizePending();
+   }
+
+   /**
+    * While Device is held the buttons show the snapshot bank: the focus row recalls, the control row stores.
+    */
+   public void setDeviceHeld(final boolean held) {
+      deviceHeld = held;
+   }
+
+   /**
+    * Store the current pattern in a snapshot slot. The steps of the hidden page are subscribed for the
+    * capture, so the slot is complete once their values have been reported.
+    */
+   public void storeSnapshot(final int snapshot) {
+      if (!active || snapshot < 0 || snapshot >= ArpSnapshotBank.SLOTS) {
+         return;
+      }
+      final ArpDeviceSlot source = slot;
+      storeSource = source;
+      subscribeHiddenPages(source);
+      host.scheduleTask(() -> {
+         if (storeSource == source) {
+            storeSource = null;
+         }
+         for (int parameter = 0; parameter < ArpSnapshotBank.PARAMETERS; parameter++) {
+            snapshots.set(snapshot, parameter, source.writes.get(source.snapshotIds[parameter]));
+         }
+         snapshots.markStored(snapshot);
+         // A recall running on the same slot still needs the hidden page; continueRecall restores the detail.
+         if (recallSource != source) {
+            source.setDetail(source == slot, stepPage);
+         }
+         host.showPopupNotification("Launch Control XL: arp snapshot %d stored".formatted(snapshot + 1));
+      }, PAGE_SETTLE_MS);
+   }
+
+   private void subscribeHiddenPages(final ArpDeviceSlot source) {
+      for (int page = 0; page < PAGE_COUNT; page++) {
+         if (page != stepPage) {
+            source.setPageSubscribed(page, true);
+         }
+      }
+   }
+
+   /**
+    * Recall a stored snapshot. Its values are written in batches of {@value #RECALL_BATCH_SIZE} per tick
+    * through the write buffer, so the device receives a few coalesced updates instead of one burst. As for
+    * {@link #storeSnapshot(int)}, the steps of the hidden page are subscribed first and the writes start once
+    * their values have been reported.
+    */
+   public void recallSnapshot(final int snapshot) {
+      if (!active || !snapshots.beginRecall(snapshot)) {
+         return;
+      }
+      lastRecalledSnapshot = snapshot;
+      // The recalled gates and velocities replace whatever the toggles had stored.
+      Arrays.fill(state.velocityBoostEnabled, false);
+      Arrays.fill(state.gateMuted, false);
+      Arrays.fill(state.quantizeMutedSteps, false);
+      stateChanged();
+      host.showPopupNotification("Launch Control XL: arp snapshot %d".formatted(snapshot + 1));
+      if (!recallScheduled) {
+         recallSource = this.slot;
+         subscribeHiddenPages(recallSource);
+         recallScheduled = true;
+         host.scheduleTask(this::continueRecall, PAGE_SETTLE_MS);
+      }
+   }
+
+   private void continueRecall() {
+      recallScheduled = false;
+      if (recallSource == slot && snapshots.recallNext(snapshotWriter, RECALL_BATCH_SIZE)) {
+         recallScheduled = true;
+         host.scheduleTask(this::continueRecall, RECALL_TICK_MS);
+         return;
+      }
+      if (storeSource != recallSource) {
+         recallSource.setDetail(recallSource == slot, stepPage);
+      }
+      recallSource = null;
+   }
+
+   /**
+    * Morph towards the pattern at {@code position} between the two selected snapshots. Writes happen at most
+    * every {@value #MORPH_INTERVAL_MS} ms; positions in between are folded into the next write.
+    */
+   private void setMorphPosition(final double position) {
+      morphPosition = position;
+      if (morphScheduled) {
+         morphPending = true;
+         return;
+      }
+      applyMorph();
+   }
+
+   private void applyMorph() {
+      morphPending = false;
+      snapshots.cancelRecall();
+      snapshots.morph(morphPosition, snapshotWriter);
+      morphScheduled = true;
+      host.scheduleTask(() -> {
+         morphScheduled = false;
+         if (morphPending) {
+            applyMorph();
+         }
+      }, MORPH_INTERVAL_MS);
+   }
+
+   /**
+    * Follow the arp's STEP output, limited to one move per {@value #PLAYHEAD_MIN_INTERVAL_MS} ms. A step that
+    * arrives too early is picked up by a deferred update. Only the LEDs of the old and new step change, so
+    * the next flush sends just those two.
+    */
+   private void updatePlayhead() {
+      if (playheadScheduled) {
+         return;
+      }
+      final long now = System.currentTimeMillis();
+      final long wait = lastPlayheadMs + PLAYHEAD_MIN_INTERVAL_MS - now;
+      if (wait <= 0) {
+         playheadStep = slot.stepPosition.get();
+         lastPlayheadMs = now;
+         return;
+      }
+      playheadScheduled = true;
+      host.scheduleTask(() -> {
+         playheadScheduled = false;
+         playheadStep = slot.stepPosition.get();
+         lastPlayheadMs = System.currentTimeMillis();
+         host.requestFlush();
+      }, wait);
+   }
+
+   private boolean isPlayhead(final int index) {
+      return playheadStep >= 0 && playheadStep == step(index);
+   }
+
+   /** @return true if the focus row has one button per step in the current matrix mode */
+   private boolean focusRowShowsSteps() {
+      return switch (matrixMode)
+      {
+         case DEFAULT, GLOBAL_VELOCITY, GLOBAL_GATE, VELOCITY_GATE -> true;
+         default -> false;
+      };
+   }
+
+   /** @return the arp step shown at hardware column {@code index} */
+   private int step(final int index) {
+      return stepPage * PAGE_SIZE + index;
    }
 
    public void activate() {
@@ -120,7 +442,6 @@ public final class RhArpLayerController {
       }
       active = true;
       host.println("RhArpLayerController: arp layer engaged");
-      cursorDevice.isPinned().set(true);
    }
 
    public void deactivate() {
@@ -129,7 +450,18 @@ public final class RhArpLayerController {
       }
       active = false;
       matrixMode = MatrixMode.DEFAULT;
-      host.println("RhArpLayerController: arp layer disengaged");
+      long suppressed = 0;
+      for (final ArpDeviceSlot arpSlot : slots) {
+         suppressed += arpSlot.writes.getSuppressedWrites();
+      }
+      host.println("RhArpLayerController: arp layer disengaged (%d coalesced parameter writes)".formatted(suppressed));
+   }
+
+   /** Send the step parameter values written since the last flush; called from the extension's flush. */
+   public void flush() {
+      for (final ArpDeviceSlot arpSlot : slots) {
+         arpSlot.writes.flush();
+      }
    }
 
    public boolean isActive() {
@@ -161,6 +493,7 @@ public final class RhArpLayerController {
       if (!active) {
          return;
       }
+      slot.edits.beginGesture();
       switch (matrixMode)
       {
          case GLOBAL_VELOCITY -> handleStepCountPressed(index);
@@ -169,13 +502,16 @@ public final class RhArpLayerController {
          case PATTERN -> setPatternMode(index);
          case VELOCITY_GATE -> toggleVelocityGateFocus(index);
          case QUANTIZE -> toggleQuantizeButton(index);
+         case MORPH -> snapshots.setMorphFrom(index);
       }
+      slot.edits.endGesture();
    }
 
    public void handleTrackControlPressed(final int index) {
       if (!active) {
          return;
       }
+      slot.edits.beginGesture();
       switch (matrixMode)
       {
          case DEFAULT -> handleStepCountPressed(index);
@@ -185,21 +521,23 @@ public final class RhArpLayerController {
          case PATTERN -> setPatternMode(index + 8);
          case VELOCITY_GATE -> toggleVelocityGateControl(index);
          case QUANTIZE -> toggleQuantizeButton(index + 8);
+         case MORPH -> snapshots.setMorphTo(index);
       }
+      slot.edits.endGesture();
    }
 
    public void handleOctaveIncrease() {
       if (!active) {
          return;
       }
-      octavesParameter.value().incRaw(1);
+      slot.octaves.value().incRaw(1);
    }
 
    public void handleOctaveDecrease() {
       if (!active) {
          return;
       }
-      octavesParameter.value().incRaw(-1);
+      slot.octaves.value().incRaw(-1);
    }
 
    public void toggleGlobalVelocityMode() {
@@ -226,22 +564,67 @@ public final class RhArpLayerController {
       toggleMatrixMode(MatrixMode.QUANTIZE, "Launch Control XL: arp quantize");
    }
 
+   /**
+    * Step through the scale presets (quantize mode only). From a custom scale the first step selects the
+    * first preset.
+    */
+   public void handleScalePresetStep(final int direction) {
+      if (!active || matrixMode != MatrixMode.QUANTIZE) {
+         return;
+      }
+      final int count = ScaleQuantizer.getPresetCount();
+      final int current = state.scale.getPreset();
+      final int next = current == ScaleQuantizer.CUSTOM ? 0 : Math.floorMod(current + direction, count);
+      state.scale.setPreset(next, state.scale.getRoot());
+      applyQuantize();
+      stateChanged();
+      showScale();
+   }
+
+   /** Move the root of the selected scale preset by a semitone (quantize mode only). */
+   public void handleScaleRootStep(final int direction) {
+      if (!active || matrixMode != MatrixMode.QUANTIZE || state.scale.getPreset() == ScaleQuantizer.CUSTOM) {
+         return;
+      }
+      state.scale.setPreset(state.scale.getPreset(), state.scale.getRoot() + direction);
+      applyQuantize();
+      stateChanged();
+      showScale();
+   }
+
+   private void showScale() {
+      host.showPopupNotification("Launch Control XL: arp scale %s %s".formatted(
+         NOTE_NAMES[state.scale.getRoot()], ScaleQuantizer.getPresetName(state.scale.getPreset())));
+   }
+
+   public void toggleMorphMode() {
+      toggleMatrixMode(MatrixMode.MORPH, "Launch Control XL: arp snapshot morph");
+   }
+
    public void handlePitchOffsetKnob(final int index, final int value) {
       if (!active) {
          return;
       }
-      knobPitchOffsets[index] = ccValueToPitch(value);
-      applyPitchValue(index);
-      applyQuantize();
+      final int step = step(index);
+      state.knobPitchOffsets[step] = ccValueToPitch(value);
+      applyPitchValue(step);
+      applyQuantize(step);
+      stateChanged();
    }
 
    public void handlePitchOffsetSlider(final int index, final int value) {
       if (!active) {
          return;
       }
-      sliderPitchOffsets[index] = ccValueToPitch(value);
-      applyPitchValue(index);
-      applyQuantize();
+      if (matrixMode == MatrixMode.MORPH && index == MORPH_SLIDER) {
+         setMorphPosition(ccValueToNormalized(value));
+         return;
+      }
+      final int step = step(index);
+      state.sliderPitchOffsets[step] = ccValueToPitch(value);
+      applyPitchValue(step);
+      applyQuantize(step);
+      stateChanged();
    }
 
    public void handleVelocityKnob(final int index, final int value) {
@@ -249,8 +632,7 @@ public final class RhArpLayerController {
          return;
       }
       final double normalized = ccValueToNormalized(value);
-      final Parameter parameter = velocityParameters.get(index);
-      parameter.value().set(normalized);
+      slot.writes.set(slot.velocityIds[step(index)], normalized);
    }
 
    public void handleGateKnob(final int index, final int value) {
@@ -258,8 +640,7 @@ public final class RhArpLayerController {
          return;
       }
       final double normalized = ccValueToNormalized(value);
-      final Parameter parameter = gateParameters.get(index);
-      parameter.value().set(normalized);
+      slot.writes.set(slot.gateIds[step(index)], normalized);
    }
 
    public boolean isTimingModeActive() {
@@ -278,10 +659,20 @@ public final class RhArpLayerController {
       return matrixMode == MatrixMode.QUANTIZE;
    }
 
+   public boolean isMorphModeActive() {
+      return matrixMode == MatrixMode.MORPH;
+   }
+
    public int applyFocusColor(final int index, final int defaultColor) {
       if (!active) {
          return defaultColor;
       }
+      if (deviceHeld) {
+         return recallSnapshotColor(index);
+      }
+      if (isPlayhead(index) && focusRowShowsSteps()) {
+         return SimpleLedColor.Yellow.value();
+      }
       return switch (matrixMode)
       {
          case GLOBAL_VELOCITY -> stepCountColor(index);
@@ -290,6 +681,7 @@ public final class RhArpLayerController {
          case PATTERN -> patternColor(index);
          case VELOCITY_GATE -> velocityToggleColor(index);
          case QUANTIZE -> quantizeColor(index);
+         case MORPH -> morphSnapshotColor(index, snapshots.getMorphFrom());
       };
    }
 
@@ -297,6 +689,9 @@ public final class RhArpLayerController {
       if (!active) {
          return defaultColor;
       }
+      if (deviceHeld) {
+         return storeSnapshotColor(index);
+      }
       return switch (matrixMode)
       {
          case DEFAULT -> stepCountColor(index);
@@ -306,9 +701,31 @@ public final class RhArpLayerController {
          case PATTERN -> patternColor(index + 8);
          case VELOCITY_GATE -> gateToggleColor(index);
          case QUANTIZE -> quantizeColor(index + 8);
+         case MORPH -> morphSnapshotColor(index, snapshots.getMorphTo());
       };
    }
 
+   private int recallSnapshotColor(final int index) {
+      if (index < 0 || index >= ArpSnapshotBank.SLOTS || !snapshots.isStored(index)) {
+         return SimpleLedColor.Off.value();
+      }
+      return index == lastRecalledSnapshot ? SimpleLedColor.Green.value() : SimpleLedColor.GreenLow.value();
+   }
+
+   private int storeSnapshotColor(final int index) {
+      if (index < 0 || index >= ArpSnapshotBank.SLOTS) {
+         return SimpleLedColor.Off.value();
+      }
+      return snapshots.isStored(index) ? SimpleLedColor.Amber.value() : SimpleLedColor.AmberLow.value();
+   }
+
+   private int morphSnapshotColor(final int index, final int selected) {
+      if (index < 0 || index >= ArpSnapshotBank.SLOTS || !snapshots.isStored(index)) {
+         return SimpleLedColor.Off.value();
+      }
+      return index == selected ? SimpleLedColor.Red.value() : SimpleLedColor.RedLow.value();
+   }
+
    private static double ccValueToPitch(final int value) {
       return (-24d) + (48d * ccValueToNormalized(value));
    }
@@ -317,11 +734,11 @@ public final class RhArpLayerController {
       return Math.max(0, Math.min(1, value / 127.0));
    }
 
-   private void applyPitchValue(final int index) {
-      final double combined = knobPitchOffsets[index] + sliderPitchOffsets[index];
+   private void applyPitchValue(final int step) {
+      final double combined = state.knobPitchOffsets[step] + state.sliderPitchOffsets[step];
       final double clamped = Math.max(-24d, Math.min(24d, combined));
       final double normalized = (clamped + 24d) / 48d;
-      transposeParameters.get(index).value().set(normalized);
+      slot.writes.set(slot.transposeIds[step], normalized);
    }
 
    private void toggleMatrixMode(final MatrixMode mode, final String popupMessage) {
@@ -338,45 +755,102 @@ public final class RhArpLayerController {
       }
    }
 
+   /** Write a step parameter and log it for undo when a gesture is in progress. */
+   private void edit(final int parameter, final double value) {
+      final int id = slot.snapshotIds[parameter];
+      slot.edits.record(parameter, slot.writes.get(id), value);
+      slot.writes.set(id, value);
+   }
+
+   /** Like {@link #edit(int, double)} for a value in the parameter's own units. */
+   private void editRaw(final int parameter, final double raw) {
+      final Parameter target = rawParameter(parameter);
+      slot.edits.recordRaw(parameter, target.value().getRaw(), raw);
+      target.value().setRaw(raw);
+   }
+
+   /** @return the parameter behind a global that is edited in its own units */
+   private Parameter rawParameter(final int parameter) {
+      return switch (parameter)
+      {
+         case ArpSnapshotBank.STEP_COUNT -> slot.steps;
+         case ArpSnapshotBank.GLOBAL_VELOCITY -> slot.globalVelocity;
+         case ArpSnapshotBank.GLOBAL_GATE -> slot.globalGate;
+         default -> throw new IllegalArgumentException("Not a raw arp parameter: " + parameter);
+      };
+   }
+
+   /** An undone or redone value replaces whatever the toggle of its step had stored. */
+   private void clearToggle(final int parameter) {
+      if (parameter >= ArpSnapshotBank.VELOCITY && parameter < ArpSnapshotBank.GATE) {
+         state.velocityBoostEnabled[parameter - ArpSnapshotBank.VELOCITY] = false;
+      }
+      else if (parameter >= ArpSnapshotBank.GATE && parameter < ArpSnapshotBank.TRANSPOSE) {
+         state.gateMuted[parameter - ArpSnapshotBank.GATE] = false;
+         state.quantizeMutedSteps[parameter - ArpSnapshotBank.GATE] = false;
+      }
+      stateChanged();
+   }
+
+   /** Undo the last step edit gesture of the active slot; its writes go out as one batch. */
+   public void undoStepEdit() {
+      if (!active) {
+         return;
+      }
+      snapshots.cancelRecall();
+      host.showPopupNotification(slot.edits.undo(editTarget)
+         ? "Launch Control XL: arp edit undone"
+         : "Launch Control XL: nothing to undo");
+   }
+
+   public void redoStepEdit() {
+      if (!active) {
+         return;
+      }
+      snapshots.cancelRecall();
+      host.showPopupNotification(slot.edits.redo(editTarget)
+         ? "Launch Control XL: arp edit redone"
+         : "Launch Control XL: nothing to redo");
+   }
+
    private void toggleSkip(final int index) {
-      final Parameter skipParam = skipParameters.get(index);
-      final double value = skipParam.value().get();
-      skipParam.value().set(value == 0 ? 1 : 0);
+      final int parameter = ArpSnapshotBank.SKIP + step(index);
+      edit(parameter, slot.writes.get(slot.snapshotIds[parameter]) == 0 ? 1 : 0);
    }
 
    private void handleStepCountPressed(final int index) {
-      final double target = Math.max(1, Math.min(16, index + 1));
-      stepsParameter.value().setRaw(target);
+      final double target = Math.max(1, Math.min(ArpStepState.STEPS, step(index) + 1));
+      editRaw(ArpSnapshotBank.STEP_COUNT, target);
    }
 
    private void handleGlobalVelocityPressed(final int index) {
       if (index < GLOBAL_VELOCITY_VALUES.length) {
-         globalVelocityParameter.value().setRaw(GLOBAL_VELOCITY_VALUES[index]);
+         editRaw(ArpSnapshotBank.GLOBAL_VELOCITY, GLOBAL_VELOCITY_VALUES[index]);
       }
    }
 
    private void handleGlobalGatePressed(final int index) {
       if (index < GLOBAL_GATE_VALUES.length) {
-         globalGateParameter.value().setRaw(GLOBAL_GATE_VALUES[index]);
+         editRaw(ArpSnapshotBank.GLOBAL_GATE, GLOBAL_GATE_VALUES[index]);
       }
    }
 
    private int skipColor(final int index) {
-      final Parameter skipParam = skipParameters.get(index);
+      final Parameter skipParam = slot.skip[step(index)];
       final double value = skipParam.value().get();
       return value == 0 ? SimpleLedColor.Green.value() : SimpleLedColor.Red.value();
    }
 
    private int stepCountColor(final int index) {
-      final double stepCount = stepsParameter.value().getRaw();
-      if (index < stepCount) {
+      final double stepCount = slot.steps.value().getRaw();
+      if (step(index) < stepCount) {
          return SimpleLedColor.Amber.value();
       }
       return SimpleLedColor.AmberLow.value();
    }
 
    private int globalVelocityColor(final int index) {
-      final double raw = globalVelocityParameter.value().getRaw();
+      final double raw = slot.globalVelocity.value().getRaw();
       final double target = index < GLOBAL_VELOCITY_VALUES.length ? GLOBAL_VELOCITY_VALUES[index] : -1;
       return Math.abs(raw - target) < 0.001
          ? SimpleLedColor.Red.value()
@@ -384,7 +858,7 @@ public final class RhArpLayerController {
    }
 
    private int globalGateColor(final int index) {
-      final double raw = globalGateParameter.value().getRaw();
+      final double raw = slot.globalGate.value().getRaw();
       final double target = index < GLOBAL_GATE_VALUES.length ? GLOBAL_GATE_VALUES[index] : -1;
       return Math.abs(raw - target) < 0.001
          ? SimpleLedColor.Amber.value()
@@ -393,42 +867,42 @@ public final class RhArpLayerController {
 
    private void handleTimingFocus(final int index) {
       if (index >= 0 && index <= 2) {
-         rateModeParameter.value().setRaw(index);
+         slot.rateMode.value().setRaw(index);
       }
       else if (index == 4) {
-         final double shuffle = shuffleParameter.value().getRaw();
-         shuffleParameter.value().setRaw(shuffle == 0 ? 1 : 0);
+         final double shuffle = slot.shuffle.value().getRaw();
+         slot.shuffle.value().setRaw(shuffle == 0 ? 1 : 0);
       }
    }
 
    private void handleTimingControl(final int index) {
       if (index >= 0 && index <= 6) {
-         rateParameter.value().setRaw(index);
+         slot.rate.value().setRaw(index);
       }
       else if (index == 7) {
-         final double retrigger = retriggerParameter.value().getRaw();
-         retriggerParameter.value().setRaw(retrigger == 0 ? 1 : 0);
+         final double retrigger = slot.retrigger.value().getRaw();
+         slot.retrigger.value().setRaw(retrigger == 0 ? 1 : 0);
       }
    }
 
    private int timingFocusColor(final int index) {
       if (index >= 0 && index <= 2) {
-         final double raw = rateModeParameter.value().getRaw();
+         final double raw = slot.rateMode.value().getRaw();
          return Math.abs(raw - index) < 0.001 ? SimpleLedColor.Amber.value() : SimpleLedColor.AmberLow.value();
       }
       if (index == 4) {
-         return shuffleParameter.value().getRaw() == 0 ? SimpleLedColor.Red.value() : SimpleLedColor.RedLow.value();
+         return slot.shuffle.value().getRaw() == 0 ? SimpleLedColor.Red.value() : SimpleLedColor.RedLow.value();
       }
       return SimpleLedColor.Off.value();
    }
 
    private int timingControlColor(final int index) {
       if (index >= 0 && index <= 6) {
-         final double raw = rateParameter.value().getRaw();
+         final double raw = slot.rate.value().getRaw();
          return Math.abs(raw - index) < 0.001 ? SimpleLedColor.Green.value() : SimpleLedColor.GreenLow.value();
       }
       if (index == 7) {
-         return retriggerParameter.value().getRaw() == 1 ? SimpleLedColor.Amber.value() : SimpleLedColor.AmberLow.value();
+         return slot.retrigger.value().getRaw() == 1 ? SimpleLedColor.Amber.value() : SimpleLedColor.AmberLow.value();
       }
       return SimpleLedColor.Off.value();
    }
@@ -437,64 +911,67 @@ public final class RhArpLayerController {
       if (index < 0 || index >= 16) {
          return;
       }
-      modeParameter.value().setRaw(index + 1);
+      slot.mode.value().setRaw(index + 1);
    }
 
    private int patternColor(final int index) {
       if (index < 0 || index >= 16) {
          return SimpleLedColor.Off.value();
       }
-      final double raw = modeParameter.value().getRaw();
+      final double raw = slot.mode.value().getRaw();
       return Math.abs(raw - (index + 1)) < 0.001 ? SimpleLedColor.Red.value() : SimpleLedColor.RedLow.value();
    }
 
    private void toggleVelocityGateFocus(final int index) {
-      if (index < 0 || index >= velocityParameters.size()) {
+      if (index < 0 || index >= PAGE_SIZE) {
          return;
       }
-      final Parameter parameter = velocityParameters.get(index);
-      final double current = parameter.value().get();
-      if (velocityBoostEnabled[index]) {
-         parameter.value().set(storedVelocityValues[index]);
-         velocityBoostEnabled[index] = false;
+      final int step = step(index);
+      final int parameter = ArpSnapshotBank.VELOCITY + step;
+      if (state.velocityBoostEnabled[step]) {
+         edit(parameter, state.storedVelocityValues[step]);
+         state.velocityBoostEnabled[step] = false;
       }
       else {
-         storedVelocityValues[index] = current;
-         parameter.value().set(1.0);
-         velocityBoostEnabled[index] = true;
+         state.storedVelocityValues[step] = slot.writes.get(slot.velocityIds[step]);
+         edit(parameter, 1.0);
+         state.velocityBoostEnabled[step] = true;
       }
+      stateChanged();
    }
 
    private void toggleVelocityGateControl(final int index) {
-      if (index < 0 || index >= gateParameters.size()) {
+      if (index < 0 || index >= PAGE_SIZE) {
          return;
       }
-      final Parameter parameter = gateParameters.get(index);
-      if (gateMuted[index]) {
-         final double restore = storedGateValues[index] > 0 ? storedGateValues[index] : 1.0;
-         parameter.value().set(restore);
-         gateMuted[index] = false;
+      final int step = step(index);
+      final int parameter = ArpSnapshotBank.GATE + step;
+      if (state.gateMuted[step]) {
+         final double restore = state.storedGateValues[step] > 0 ? state.storedGateValues[step] : 1.0;
+         edit(parameter, restore);
+         state.gateMuted[step] = false;
       }
       else {
-         storedGateValues[index] = parameter.value().get();
-         parameter.value().set(0.0);
-         gateMuted[index] = true;
+         state.storedGateValues[step] = slot.writes.get(slot.gateIds[step]);
+         edit(parameter, 0.0);
+         state.gateMuted[step] = true;
       }
-      applyQuantize();
+      applyQuantize(step);
+      stateChanged();
    }
 
    private int velocityToggleColor(final int index) {
-      if (index < 0 || index >= velocityBoostEnabled.length) {
+      if (index < 0 || index >= PAGE_SIZE) {
          return SimpleLedColor.Off.value();
       }
-      return velocityBoostEnabled[index] ? SimpleLedColor.Green.value() : SimpleLedColor.GreenLow.value();
+      return state.velocityBoostEnabled[step(index)] ? SimpleLedColor.Green.value() : SimpleLedColor.GreenLow.value();
    }
 
    private int gateToggleColor(final int index) {
-      if (index < 0 || index >= gateMuted.length) {
+      if (index < 0 || index >= PAGE_SIZE) {
          return SimpleLedColor.Off.value();
       }
-      return gateMuted[index] ? SimpleLedColor.Red.value() : SimpleLedColor.Amber.value();
+      return state.gateMuted[step(index)] ? SimpleLedColor.Red.value() : SimpleLedColor.Amber.value();
    }
 
    private void toggleQuantizeButton(final int index) {
@@ -502,8 +979,9 @@ public final class RhArpLayerController {
       if (note < 0) {
          return;
       }
-      quantizeNotes[note] = !quantizeNotes[note];
+      state.scale.toggleNote(note);
       applyQuantize();
+      stateChanged();
    }
 
    private int quantizeColor(final int index) {
@@ -511,7 +989,7 @@ public final class RhArpLayerController {
       if (note < 0) {
          return SimpleLedColor.Off.value();
       }
-      return quantizeNotes[note] ? SimpleLedColor.Green.value() : SimpleLedColor.GreenLow.value();
+      return state.scale.isNoteSet(note) ? SimpleLedColor.Green.value() : SimpleLedColor.GreenLow.value();
    }
 
    private int getQuantizeNoteForIndex(final int index) {
@@ -524,41 +1002,67 @@ public final class RhArpLayerController {
       return QUANTIZE_CONTROL_NOTES[index - 8];
    }
 
+   /**
+    * Re-evaluate every step after a scale change. Steps of the hidden page are only marked, since their gate
+    * values are not observed; they follow when their page is shown.
+    */
    private void applyQuantize() {
-      for (int i = 0; i < Math.min(8, gateParameters.size()); i++) {
-         final int note = getStepNoteIndex(i);
-         final boolean allowed = note < 0 || quantizeNotes[note];
-         final Parameter gate = gateParameters.get(i);
-         if (allowed) {
-            if (quantizeMutedSteps[i]) {
-               gate.value().set(quantizeStoredGates[i]);
-               quantizeMutedSteps[i] = false;
-            }
+      for (int step = 0; step < ArpStepState.STEPS; step++) {
+         if (step / PAGE_SIZE == stepPage) {
+            applyQuantize(step);
          }
          else {
-            if (!quantizeMutedSteps[i]) {
-               quantizeStoredGates[i] = gate.value().get();
-               gate.value().set(0.0);
-               quantizeMutedSteps[i] = true;
-            }
+            state.quantizePending[step] = true;
          }
       }
    }
 
-   private int getStepNoteIndex(final int index) {
-      if (index < 0 || index >= knobPitchOffsets.length) {
-         return -1;
+   /** Mute or restore the gate of one step depending on whether its pitch is in the scale. */
+   private void applyQuantize(final int step) {
+      if (step < 0 || step >= ArpStepState.STEPS) {
+         return;
+      }
+      state.quantizePending[step] = false;
+      final double combined = state.knobPitchOffsets[step] + state.sliderPitchOffsets[step];
+      final boolean allowed = state.scale.allows((int)Math.round(combined));
+      final int parameter = ArpSnapshotBank.GATE + step;
+      if (allowed) {
+         if (state.quantizeMutedSteps[step]) {
+            edit(parameter, state.quantizeStoredGates[step]);
+            state.quantizeMutedSteps[step] = false;
+         }
+      }
+      else {
+         if (!state.quantizeMutedSteps[step]) {
+            state.quantizeStoredGates[step] = slot.writes.get(slot.gateIds[step]);
+            edit(parameter, 0.0);
+            state.quantizeMutedSteps[step] = true;
+         }
       }
-      final double combined = knobPitchOffsets[index] + sliderPitchOffsets[index];
-      final int semitone = (int)Math.round(combined);
-      return Math.floorMod(semitone, 12);
+   }
+
+   /** Apply pending quantize changes of the visible page once its gate values have arrived. */
+   private void scheduleQuantizePending() {
+      final ArpStepState target = state;
+      final int page = stepPage;
+      host.scheduleTask(() -> {
+         if (state != target || stepPage != page) {
+            return;
+         }
+         for (int step = page * PAGE_SIZE; step < (page + 1) * PAGE_SIZE; step++) {
+            if (state.quantizePending[step]) {
+               applyQuantize(step);
+            }
+         }
+         stateChanged();
+      }, PAGE_SETTLE_MS);
    }
 
    public int getPitchLedColor(final int index) {
-      if (!active || index >= transposeParameters.size()) {
+      if (!active || index >= PAGE_SIZE) {
          return SimpleLedColor.Off.value();
       }
-      final double normalized = transposeParameters.get(index).value().get();
+      final double normalized = slot.transpose[step(index)].value().get();
       final double semitones = normalized * 48.0 - 24.0;
       if (Math.abs(semitones) < 0.1) {
          return SimpleLedColor.Yellow.value();
@@ -570,10 +1074,10 @@ public final class RhArpLayerController {
    }
 
    public int getVelocityLedColor(final int index) {
-      if (!active || index >= velocityParameters.size()) {
+      if (!active || index >= PAGE_SIZE) {
          return SimpleLedColor.Off.value();
       }
-      final double value = velocityParameters.get(index).value().get();
+      final double value = slot.velocity[step(index)].value().get();
       if (value <= 0.01) {
          return SimpleLedColor.Off.value();
       }
@@ -584,10 +1088,10 @@ public final class RhArpLayerController {
    }
 
    public int getGateLedColor(final int index) {
-      if (!active || index >= gateParameters.size()) {
+      if (!active || index >= PAGE_SIZE) {
          return SimpleLedColor.Off.value();
       }
-      final double value = gateParameters.get(index).value().get();
+      final double value = slot.gate[step(index)].value().get();
       if (value <= 0.01) {
          return SimpleLedColor.Off.value();
       }
@@ -0,0 +1,161 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.arp;
+
+import com.bitwig.extensions.framework.MusicalScale;
+import com.bitwig.extensions.framework.MusicalScaleLibrary;
+
+/**
+ * Scale used to quantize arp step notes. The scale is a 12-bit mask of allowed pitch classes (bit 0 = C of
+ * the step's base note). For the step range of {@value #MIN_NOTE} to {@value #MAX_NOTE} semitones a table
+ * holds the nearest allowed note of every value, so quantizing a note is a single lookup.
+ * <p>
+ * The scale is either a preset, a scale of the {@link MusicalScaleLibrary} on one of the 12 roots, or a
+ * custom mask. The masks and tables of all presets are built once at class load, so selecting a preset
+ * swaps in a ready table; a custom mask rebuilds its own table only when it changes.
+ */
+public class ScaleQuantizer {
+
+   public static final int MIN_NOTE = -24;
+   public static final int MAX_NOTE = 24;
+   public static final int ALL_NOTES = 0xFFF;
+   /** Value of {@link #getPreset()} while the scale is a custom mask. */
+   public static final int CUSTOM = -1;
+
+   private static final int TABLE_SIZE = MAX_NOTE - MIN_NOTE + 1;
+   private static final String[] PRESET_NAMES;
+   /** Mask and table of each preset on each root, indexed by {@code preset * 12 + root}. */
+   private static final int[] PRESET_MASKS;
+   private static final byte[][] PRESET_TABLES;
+
+   static {
+      final MusicalScaleLibrary library = MusicalScaleLibrary.getInstance();
+      final int count = library.getMusicalScalesCount();
+      PRESET_NAMES = new String[count];
+      PRESET_MASKS = new int[count * 12];
+      PRESET_TABLES = new byte[count * 12][];
+      for (int preset = 0; preset < count; preset++) {
+         final MusicalScale scale = library.getMusicalScale(preset);
+         PRESET_NAMES[preset] = scale.getName();
+         for (int root = 0; root < 12; root++) {
+            final int scaleMask = scale.getMask();
+            final int mask = ((scaleMask << root) | (scaleMask >>> (12 - root))) & ALL_NOTES;
+            PRESET_MASKS[preset * 12 + root] = mask;
+            PRESET_TABLES[preset * 12 + root] = buildTable(mask, new byte[TABLE_SIZE]);
+         }
+      }
+   }
+
+   private final byte[] customTable = new byte[TABLE_SIZE];
+   private byte[] nearest = customTable;
+   private int mask = -1;
+   private int preset = CUSTOM;
+   private int root;
+
+   public ScaleQuantizer() {
+      setMask(ALL_NOTES);
+   }
+
+   public static int getPresetCount() {
+      return PRESET_NAMES.length;
+   }
+
+   public static String getPresetName(final int preset) {
+      return preset >= 0 && preset < PRESET_NAMES.length ? PRESET_NAMES[preset] : "Custom";
+   }
+
+   public int getMask() {
+      return mask;
+   }
+
+   /**
+    * @return index of the selected preset in the {@link MusicalScaleLibrary}, or {@link #CUSTOM}
+    */
+   public int getPreset() {
+      return preset;
+   }
+
+   /**
+    * @return root of the selected preset in semitones above the step's base note
+    */
+   public int getRoot() {
+      return root;
+   }
+
+   /**
+    * Select a preset scale; constant time.
+    *
+    * @param preset index in the {@link MusicalScaleLibrary}
+    * @param root   root in semitones, any value (taken modulo 12)
+    */
+   public void setPreset(final int preset, final int root) {
+      if (preset < 0 || preset >= PRESET_NAMES.length) {
+         return;
+      }
+      this.preset = preset;
+      this.root = Math.floorMod(root, 12);
+      final int index = preset * 12 + this.root;
+      mask = PRESET_MASKS[index];
+      nearest = PRESET_TABLES[index];
+   }
+
+   /**
+    * Set a custom scale.
+    *
+    * @param mask 12-bit mask of allowed pitch classes; higher bits are ignored
+    */
+   public void setMask(final int mask) {
+      final int newMask = mask & ALL_NOTES;
+      preset = CUSTOM;
+      if (newMask == this.mask) {
+         return;
+      }
+      this.mask = newMask;
+      nearest = buildTable(newMask, customTable);
+   }
+
+   public boolean isNoteSet(final int note) {
+      return (mask & (1 << note)) != 0;
+   }
+
+   public void toggleNote(final int note) {
+      setMask(mask ^ (1 << note));
+   }
+
+   /**
+    * @param value note in semitones, any range
+    * @return true if the pitch class of the note is in the scale
+    */
+   public boolean allows(final int value) {
+      return (mask & (1 << Math.floorMod(value, 12))) != 0;
+   }
+
+   /**
+    * @param value note in semitones, clamped to {@value #MIN_NOTE} .. {@value #MAX_NOTE}
+    * @return the allowed note closest to the value (the upper one on a tie), or the clamped value itself
+    *         when the scale is empty
+    */
+   public int nearest(final int value) {
+      return nearest[Math.min(Math.max(MIN_NOTE, value), MAX_NOTE) - MIN_NOTE];
+   }
+
+   private static byte[] buildTable(final int mask, final byte[] table) {
+      for (int value = MIN_NOTE; value <= MAX_NOTE; value++) {
+         table[value - MIN_NOTE] = (byte) findNearest(mask, value);
+      }
+      return table;
+   }
+
+   private static int findNearest(final int mask, final int value) {
+      if (mask == 0) {
+         return value;
+      }
+      for (int distance = 0; distance <= MAX_NOTE - MIN_NOTE; distance++) {
+         if (value + distance <= MAX_NOTE && (mask & (1 << Math.floorMod(value + distance, 12))) != 0) {
+            return value + distance;
+         }
+         if (value - distance >= MIN_NOTE && (mask & (1 << Math.floorMod(value - distance, 12))) != 0) {
+            return value - distance;
+         }
+      }
+      return value;
+   }
+}
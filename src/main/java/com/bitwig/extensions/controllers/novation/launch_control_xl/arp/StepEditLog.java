@@ -0,0 +1,161 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.arp;
+
+/**
+ * Undo history of the step edits made from the controller. Each entry holds an {@link ArpSnapshotBank}
+ * parameter index with the old and new value known when the edit was made, normalized or in the parameter's
+ * own units; the entries of one button press share a gesture number and are undone and redone together.
+ * Undo and redo write the logged values and never read the device back, whose values may be stale for a
+ * step page that is not observed.
+ * <p>
+ * Entries live in fixed primitive arrays used as a ring, so recording allocates nothing. When the ring is
+ * full the oldest gesture is dropped as a whole. Recording after an undo discards the gestures that could
+ * have been redone.
+ */
+final class StepEditLog {
+
+   /** Parameter values the log writes on undo and redo. */
+   interface Target {
+      void set(int parameter, double value);
+
+      void setRaw(int parameter, double raw);
+   }
+
+   private final int[] parameters;
+   private final double[] oldValues;
+   private final double[] newValues;
+   private final boolean[] raw;
+   private final int[] gestures;
+   private int start;
+   private int size;
+   /** Entries before this position (counted from {@link #start}) are applied; the rest can be redone. */
+   private int applied;
+   private int gesture;
+   private boolean recording;
+
+   StepEditLog(final int capacity) {
+      this.parameters = new int[capacity];
+      this.oldValues = new double[capacity];
+      this.newValues = new double[capacity];
+      this.raw = new boolean[capacity];
+      this.gestures = new int[capacity];
+   }
+
+   /** Start a gesture; the edits recorded until {@link #endGesture()} form one undo step. */
+   void beginGesture() {
+      gesture++;
+      recording = true;
+   }
+
+   void endGesture() {
+      recording = false;
+   }
+
+   /**
+    * Log a normalized write made during a gesture; writes outside a gesture are not logged. A parameter
+    * written twice in one gesture keeps its first old value.
+    */
+   void record(final int parameter, final double oldValue, final double newValue) {
+      record(parameter, oldValue, newValue, false);
+   }
+
+   /** Like {@link #record(int, double, double)} for values in the parameter's own units. */
+   void recordRaw(final int parameter, final double oldRaw, final double newRaw) {
+      record(parameter, oldRaw, newRaw, true);
+   }
+
+   private void record(final int parameter, final double oldValue, final double newValue, final boolean isRaw) {
+      if (!recording) {
+         return;
+      }
+      for (int i = applied - 1; i >= 0 && gestures[index(i)] == gesture; i--) {
+         if (parameters[index(i)] == parameter) {
+            newValues[index(i)] = newValue;
+            return;
+         }
+      }
+      size = applied;
+      if (size == parameters.length) {
+         if (gestures[start] == gesture) {
+            return; // the gesture fills the whole log; keep what it has so far
+         }
+         dropOldestGesture();
+      }
+      final int i = index(size);
+      parameters[i] = parameter;
+      oldValues[i] = oldValue;
+      newValues[i] = newValue;
+      raw[i] = isRaw;
+      gestures[i] = gesture;
+      size++;
+      applied = size;
+   }
+
+   boolean canUndo() {
+      return applied > 0;
+   }
+
+   boolean canRedo() {
+      return applied < size;
+   }
+
+   /**
+    * Restore the old values of the last applied gesture.
+    *
+    * @return false if there was nothing to undo
+    */
+   boolean undo(final Target target) {
+      if (!canUndo()) {
+         return false;
+      }
+      final int undone = gestures[index(applied - 1)];
+      while (applied > 0 && gestures[index(applied - 1)] == undone) {
+         final int i = index(--applied);
+         write(target, i, oldValues[i]);
+      }
+      return true;
+   }
+
+   /**
+    * Write the new values of the first undone gesture again.
+    *
+    * @return false if there was nothing to redo
+    */
+   boolean redo(final Target target) {
+      if (!canRedo()) {
+         return false;
+      }
+      final int redone = gestures[index(applied)];
+      while (applied < size && gestures[index(applied)] == redone) {
+         final int i = index(applied++);
+         write(target, i, newValues[i]);
+      }
+      return true;
+   }
+
+   /** @return number of logged entries, including those that can be redone */
+   int size() {
+      return size;
+   }
+
+   private void write(final Target target, final int entry, final double value) {
+      if (raw[entry]) {
+         target.setRaw(parameters[entry], value);
+      }
+      else {
+         target.set(parameters[entry], value);
+      }
+   }
+
+   private void dropOldestGesture() {
+      final int dropped = gestures[start];
+      while (size > 0 && gestures[start] == dropped) {
+         start = (start + 1) % parameters.length;
+         size--;
+         applied--;
+      }
+   }
+
+   private int index(final int position) {
+      return (start + position) % parameters.length;
+   }
+}
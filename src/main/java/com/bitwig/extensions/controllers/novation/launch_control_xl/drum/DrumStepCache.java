@@ -0,0 +1,67 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.drum;
+
+/**
+ * Mirror of the note starts in the first {@value #STEPS} steps of one key of a clip, kept up to date from the
+ * clip's step observers one change at a time. The clip observes a single row scrolled to the edited key, so
+ * the observers only report that key.
+ * <p>
+ * The steps are the bits of one long, so a page of {@value #PAGE_STEPS} steps is a shift and a mask.
+ * Velocities are kept in a byte array (0–127) indexed by step.
+ * <p>
+ * The observers report changes of the clip grid, so when the cursor clip moves to another clip or the row is
+ * scrolled to another key they report the steps that differ; the mirror needs no reset of its own.
+ */
+public final class DrumStepCache
+{
+   public static final int STEPS = Long.SIZE;
+   public static final int PAGE_STEPS = 16;
+   public static final int PAGES = STEPS / PAGE_STEPS;
+   /** State reported by the step data observer for a step where a note starts. */
+   public static final int STATE_NOTE_START = 2;
+
+   private long steps;
+   private final byte[] velocities = new byte[STEPS];
+
+   /** Apply one step data change (0 = empty, 1 = a note continues, 2 = a note starts). */
+   public void setStepState(final int step, final int state)
+   {
+      if (!inRange(step))
+         return;
+      if (state == STATE_NOTE_START)
+         steps |= 1L << step;
+      else
+         steps &= ~(1L << step);
+   }
+
+   /** @param velocity normalized velocity of the note starting at the step */
+   public void setVelocity(final int step, final double velocity)
+   {
+      if (!inRange(step))
+         return;
+      velocities[step] = (byte) Math.round(Math.max(0, Math.min(1, velocity)) * 127);
+   }
+
+   public boolean isSet(final int step)
+   {
+      return inRange(step) && (steps & (1L << step)) != 0;
+   }
+
+   /** @return the steps of one page as bits, bit 0 being the first step of the page */
+   public int getPage(final int page)
+   {
+      if (page < 0 || page >= PAGES)
+         return 0;
+      return (int) (steps >>> (page * PAGE_STEPS)) & 0xFFFF;
+   }
+
+   /** @return velocity 0–127 of the note at the step, 0 if there is none */
+   public int getVelocity(final int step)
+   {
+      return isSet(step) ? velocities[step] : 0;
+   }
+
+   private static boolean inRange(final int step)
+   {
+      return step >= 0 && step < STEPS;
+   }
+}
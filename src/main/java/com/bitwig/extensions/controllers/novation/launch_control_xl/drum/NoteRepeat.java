@@ -0,0 +1,224 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.drum;
+
+import java.util.function.LongSupplier;
+
+import com.bitwig.extensions.framework.time.TimingWheel;
+
+/**
+ * Note repeat of one key, locked to the transport's beat grid.
+ * <p>
+ * The grid is mapped to the clock by an anchor (a beat and the time it was reached) and the tempo. Every note
+ * has a deadline on that grid, computed from the step number and never from the previous wake-up, so host
+ * latency does not add up. The engine asks the scheduler to wake it ahead of the next deadline by the lateness
+ * it measured on earlier wake-ups, and sends what is due within {@link #SEND_WINDOW_NANOS}.
+ * <p>
+ * While the transport plays, position reports pull the anchor in gently and a jump (locate, loop) moves it at
+ * once. While it is stopped the grid starts at the press.
+ * <p>
+ * The state is primitive and there is one wake-up callback; the extension passes its {@code TimingWheel}
+ * as the scheduler.
+ */
+public final class NoteRepeat
+{
+   /** Repeat rates in beats, as on the bottom buttons: 1/4 to 1/32, then the same as triplets. */
+   public static final double[] RATES = {1, 1.0 / 2, 1.0 / 4, 1.0 / 8, 2.0 / 3, 1.0 / 3, 1.0 / 6, 1.0 / 12};
+   public static final String[] RATE_NAMES = {"1/4", "1/8", "1/16", "1/32", "1/4T", "1/8T", "1/16T", "1/32T"};
+
+   /** Notes due this close to a wake-up are sent by it. */
+   static final long SEND_WINDOW_NANOS = 1_000_000L;
+   /** Note length as a fraction of the step. */
+   private static final double GATE = 0.5;
+   /** A position report further than this from the grid is a locate, not drift. */
+   private static final double RELOCATE_BEATS = 0.25;
+   /** Share of the drift a position report corrects. */
+   private static final double PHASE_GAIN = 1.0 / 8;
+   private static final long MIN_LATENESS_NANOS = -1_000_000L;
+   private static final long MAX_LATENESS_NANOS = 10_000_000L;
+   private static final long NONE = Long.MAX_VALUE;
+
+   /** Receives the notes of the repeat. */
+   public interface Output
+   {
+      void noteOn(int key, int velocity);
+
+      void noteOff(int key);
+   }
+
+   private final TimingWheel.Scheduler scheduler;
+   private final LongSupplier clock;
+   private final Output output;
+   private final Runnable wakeCallback = this::wake;
+
+   private double nanosPerBeat = 60e9 / 120;
+   private double anchorBeat;
+   private long anchorNanos;
+   private boolean playing;
+
+   private boolean active;
+   private int key;
+   private int velocity;
+   private double rate;
+   private long nextStep;
+   private int soundingKey = -1;
+   private long noteOffNanos = NONE;
+
+   private long armedNanos = NONE;
+   private int pendingWakes;
+   private long latenessNanos;
+
+   public NoteRepeat(final TimingWheel.Scheduler scheduler, final LongSupplier clock, final Output output)
+   {
+      this.scheduler = scheduler;
+      this.clock = clock;
+      this.output = output;
+      this.anchorNanos = clock.getAsLong();
+   }
+
+   public void setTempo(final double bpm)
+   {
+      if (bpm <= 0)
+         return;
+      final long now = clock.getAsLong();
+      anchorBeat = beatAt(now);
+      anchorNanos = now;
+      nanosPerBeat = 60e9 / bpm;
+      arm();
+   }
+
+   public void setPlaying(final boolean playing)
+   {
+      this.playing = playing;
+   }
+
+   /** Feed a transport play position (in beats) as it is reported. */
+   public void syncPosition(final double beats)
+   {
+      if (!playing)
+         return;
+      final long now = clock.getAsLong();
+      final double error = beats - beatAt(now);
+      if (Math.abs(error) > RELOCATE_BEATS)
+      {
+         anchorBeat = beats;
+         anchorNanos = now;
+         if (active)
+            nextStep = stepAtOrAfter(beats);
+      }
+      else
+      {
+         anchorBeat += error * PHASE_GAIN;
+      }
+      arm();
+   }
+
+   /**
+    * Start repeating a key every {@code rateBeats}, replacing any repeat that runs. With the transport
+    * playing the first note is on the next step of the grid; otherwise it is sent at once.
+    */
+   public void start(final int key, final int velocity, final double rateBeats)
+   {
+      releaseSounding();
+      final long now = clock.getAsLong();
+      this.key = key;
+      this.velocity = velocity;
+      this.rate = rateBeats;
+      this.active = true;
+      if (!playing)
+      {
+         anchorBeat = 0;
+         anchorNanos = now;
+      }
+      nextStep = stepAtOrAfter(beatAt(now));
+      process(now);
+      arm();
+   }
+
+   /** Stop repeating and release the sounding note. */
+   public void stop()
+   {
+      active = false;
+      releaseSounding();
+   }
+
+   public boolean isActive()
+   {
+      return active;
+   }
+
+   /** @return how much earlier than a deadline the engine currently asks to be woken */
+   public long getLatenessNanos()
+   {
+      return latenessNanos;
+   }
+
+   private void wake()
+   {
+      final long now = clock.getAsLong();
+      pendingWakes--;
+      if (pendingWakes <= 0)
+      {
+         // Only the last wake-up requested is measured; an older one that was overtaken says nothing.
+         pendingWakes = 0;
+         final long lateness = Math.max(MIN_LATENESS_NANOS, Math.min(MAX_LATENESS_NANOS, now - armedNanos));
+         latenessNanos += (lateness - latenessNanos) / 8;
+         armedNanos = NONE;
+      }
+      process(now);
+      arm();
+   }
+
+   private void process(final long now)
+   {
+      final long horizon = now + SEND_WINDOW_NANOS;
+      if (noteOffNanos <= horizon)
+         releaseSounding();
+      if (!active || nanosAt(nextStep * rate) > horizon)
+         return;
+
+      // Steps the host was too late for are dropped rather than bunched up.
+      while (nanosAt((nextStep + 1) * rate) <= horizon)
+         nextStep++;
+      releaseSounding();
+      output.noteOn(key, velocity);
+      soundingKey = key;
+      noteOffNanos = nanosAt((nextStep + GATE) * rate);
+      nextStep++;
+   }
+
+   private void arm()
+   {
+      final long next = Math.min(noteOffNanos, active ? nanosAt(nextStep * rate) : NONE);
+      if (next == NONE)
+         return;
+      final long wakeAt = next - latenessNanos;
+      if (armedNanos != NONE && armedNanos <= wakeAt)
+         return;
+      armedNanos = wakeAt;
+      pendingWakes++;
+      // Rounded down: a wake-up that is early only costs another wake-up, one that is late reaches the groove.
+      scheduler.schedule(wakeCallback, Math.max(0, (wakeAt - clock.getAsLong()) / 1_000_000L));
+   }
+
+   private void releaseSounding()
+   {
+      if (soundingKey >= 0)
+         output.noteOff(soundingKey);
+      soundingKey = -1;
+      noteOffNanos = NONE;
+   }
+
+   private long stepAtOrAfter(final double beat)
+   {
+      return (long) Math.ceil(beat / rate - 1e-9);
+   }
+
+   private double beatAt(final long nanos)
+   {
+      return anchorBeat + (nanos - anchorNanos) / nanosPerBeat;
+   }
+
+   private long nanosAt(final double beat)
+   {
+      return anchorNanos + Math.round((beat - anchorBeat) * nanosPerBeat);
+   }
+}
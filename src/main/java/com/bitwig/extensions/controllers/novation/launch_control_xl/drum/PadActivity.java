@@ -0,0 +1,82 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.drum;
+
+import java.util.Arrays;
+
+/**
+ * Decay envelopes of the pad activity LEDs.
+ * <p>
+ * A note only sets its pad's level; {@link #tick()} runs at a fixed rate, decays the levels and derives the
+ * stage (bright, dim, off) the LEDs show. Stages change in ticks only, so the LED traffic is bounded by the
+ * tick rate however many notes are played.
+ */
+public final class PadActivity
+{
+   public static final int OFF = 0;
+   public static final int DIM = 1;
+   public static final int BRIGHT = 2;
+
+   /** Ticks a pad stays bright after a note, then dim. */
+   static final int BRIGHT_TICKS = 3;
+   static final int DIM_TICKS = 6;
+
+   private final int[] levels;
+   private final byte[] stages;
+
+   public PadActivity(final int pads)
+   {
+      levels = new int[pads];
+      stages = new byte[pads];
+   }
+
+   /** A note started on the pad. */
+   public void trigger(final int pad)
+   {
+      levels[pad] = BRIGHT_TICKS + DIM_TICKS;
+   }
+
+   /**
+    * Turn the levels into stages and decay them by one tick.
+    *
+    * @return true if a stage changed
+    */
+   public boolean tick()
+   {
+      boolean changed = false;
+      for (int pad = 0; pad < levels.length; pad++)
+      {
+         final int level = levels[pad];
+         final byte stage = (byte) (level > DIM_TICKS ? BRIGHT : level > 0 ? DIM : OFF);
+         if (stage != stages[pad])
+         {
+            stages[pad] = stage;
+            changed = true;
+         }
+         if (level > 0)
+            levels[pad] = level - 1;
+      }
+      return changed;
+   }
+
+   /** @return true while a pad is lit or about to be, i.e. while ticks are needed */
+   public boolean isActive()
+   {
+      for (int pad = 0; pad < levels.length; pad++)
+      {
+         if (levels[pad] > 0 || stages[pad] != OFF)
+            return true;
+      }
+      return false;
+   }
+
+   /** @return {@link #OFF}, {@link #DIM} or {@link #BRIGHT} as of the last tick */
+   public int getStage(final int pad)
+   {
+      return stages[pad];
+   }
+
+   public void clear()
+   {
+      Arrays.fill(levels, 0);
+      Arrays.fill(stages, (byte) OFF);
+   }
+}
@@ -0,0 +1,93 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.support;
+
+import com.bitwig.extension.controller.api.BooleanValue;
+import com.bitwig.extension.controller.api.Device;
+
+import java.util.UUID;
+import java.util.function.IntConsumer;
+
+/**
+ * Recognises Bitwig devices by what they are instead of by their (user-editable, localized) name.
+ * <p>
+ * Each known device type has a bit. {@link #observe(Device, IntConsumer)} keeps the combined key of a device
+ * slot up to date from host observers, so checking a slot against a role is a single mask test.
+ * <p>
+ * The Drum Machine bit costs one observed value ({@link Device#hasDrumPads()}). The Arpeggiator bit costs
+ * another, the existence of an Arpeggiator parameter; {@link Probe#setArpeggiatorProbed(boolean)} lets a
+ * caller drop it for slots that cannot hold an Arpeggiator.
+ */
+public final class DeviceIdentity
+{
+   public static final int DRUM_MACHINE = 1;
+   public static final int ARPEGGIATOR = 1 << 1;
+
+   /** Bitwig's Arpeggiator note FX. */
+   public static final UUID ARPEGGIATOR_ID = UUID.fromString("4d407a2b-c91b-4e4c-9a89-c53c19fe6251");
+   /** An Arpeggiator parameter, used as a probe: it only exists while the observed device is an Arpeggiator. */
+   public static final String ARPEGGIATOR_PROBE_PARAMETER = "OCTAVES";
+
+   private DeviceIdentity()
+   {
+   }
+
+   /**
+    * Observe which known device types {@code device} is. The listener receives the combined key on every
+    * change; only call this during controller initialization.
+    *
+    * @return The observers of the slot, to switch the Arpeggiator probe off where it is not needed.
+    */
+   public static Probe observe(final Device device, final IntConsumer listener)
+   {
+      final Probe probe = new Probe(device.createSpecificBitwigDevice(ARPEGGIATOR_ID)
+         .createParameter(ARPEGGIATOR_PROBE_PARAMETER)
+         .exists(), listener);
+      device.hasDrumPads().addValueObserver(hasPads -> probe.update(DRUM_MACHINE, hasPads));
+      probe.arpeggiator.addValueObserver(isArp -> {
+         if (probe.arpeggiatorProbed)
+            probe.update(ARPEGGIATOR, isArp);
+      });
+      return probe;
+   }
+
+   /** The identity observers of one device slot. */
+   public static final class Probe
+   {
+      private final BooleanValue arpeggiator;
+      private final IntConsumer listener;
+      private boolean arpeggiatorProbed = true;
+      private int key;
+
+      private Probe(final BooleanValue arpeggiator, final IntConsumer listener)
+      {
+         this.arpeggiator = arpeggiator;
+         this.listener = listener;
+      }
+
+      /**
+       * Subscribe or drop the Arpeggiator probe. While it is dropped the slot is not reported as an
+       * Arpeggiator.
+       */
+      public void setArpeggiatorProbed(final boolean probed)
+      {
+         if (probed == arpeggiatorProbed)
+            return;
+         arpeggiatorProbed = probed;
+         arpeggiator.setIsSubscribed(probed);
+         update(ARPEGGIATOR, probed && arpeggiator.get());
+      }
+
+      public boolean isArpeggiatorProbed()
+      {
+         return arpeggiatorProbed;
+      }
+
+      private void update(final int bit, final boolean present)
+      {
+         final int updated = present ? key | bit : key & ~bit;
+         if (updated == key)
+            return;
+         key = updated;
+         listener.accept(key);
+      }
+   }
+}
@@ -2,22 +2,68 @@ package com.bitwig.extensions.controllers.novation.launch_control_xl.support;
 
 import com.bitwig.extension.controller.api.ControllerHost;
 import com.bitwig.extension.controller.api.Device;
+import com.bitwig.extension.controller.api.DeviceBank;
+import com.bitwig.extension.controller.api.DocumentState;
+import com.bitwig.extension.controller.api.SettableStringValue;
+import com.bitwig.extension.controller.api.Setting;
 import com.bitwig.extension.controller.api.Track;
 import com.bitwig.extension.controller.api.TrackBank;
 
+import java.util.BitSet;
 import java.util.EnumMap;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Consumer;
 
 /**
  * Keeps track of devices on tracks and provides cached lookup/focus results.
+ * <p>
+ * Tracks are indexed through a flat track bank, so tracks inside (collapsed) groups are found as well;
+ * track indices are positions in that flattened tree. Adding, moving or grouping tracks shifts the bank
+ * contents and the observers below update the index, so lookups never walk the tree.
+ * <p>
+ * One device bank per track slot is shared by all roles: the first device's exists, name and
+ * {@link DeviceIdentity} are observed once and every role's {@link RoleMatcher} is applied on top. By default
+ * roles match by identity, so devices are found by what they are rather than by their name. The Arpeggiator
+ * probe is only subscribed for slots whose device name is not known yet or contains
+ * {@value #ARPEGGIATOR_NAME_HINT}. Each role keeps a live {@link BitSet} of
+ * matching slots, so finding the first match is a single {@link BitSet#nextSetBit(int)} instead of a scan,
+ * and adding a role costs a matcher rather than another bank per track.
+ * <p>
+ * In {@link ScanMode#LIVE} the slots cover the whole project and stay subscribed. In
+ * {@link ScanMode#WINDOWED} the slots are a small window that is only subscribed while
+ * {@link #requestFocus(Role, boolean, Consumer)} steps it through the project, one window per host tick.
+ * <p>
+ * The last hit per role (track index and device name) is stored in hidden project settings, so after a
+ * project load the first request verifies that hit instead of scanning.
+ * <p>
+ * When no track has a matching first device, a {@link NestedDeviceProbe} looks further down each chain and
+ * inside layers; the slot it finds is cached along with the track index.
  */
 public final class DeviceLocator
 {
    public enum Role
    {
-      DRUM,
-      ARP
+      DRUM("Drum Machine"),
+      ARP("Arpeggiator");
+
+      private final String label;
+
+      Role(final String label)
+      {
+         this.label = label;
+      }
+
+      public String label()
+      {
+         return this.label;
+      }
+   }
+
+   public enum ScanMode
+   {
+      LIVE,
+      WINDOWED
    }
 
    public static final class FocusResult
@@ -51,68 +97,559 @@ public final class DeviceLocator
 
    private static final class RoleState
    {
-      private final String nameMatch;
-      private final Device[] devices;
+      private final RoleMatcher matcher;
+      private final BitSet matches;
+      private final SettableStringValue storedHit;
+      /** Last value written to or delivered by {@link #storedHit}; writes that would not change it are skipped. */
+      private String storedValue = "";
       private int cachedIndex = -1;
+      /** Slot of the cached hit on its track: 0 is the first device, higher values come from the nested probe. */
+      private int cachedSlot;
+      private String cachedName;
+      /**
+       * Track whose 1-based rank among the matches is {@link #rank}, or -1 once the match set has changed.
+       * Cycling with {@link DeviceLocator#focusAdjacent(Role, int)} moves the rank along with the step.
+       */
+      private int rankIndex = -1;
+      private int rank;
 
-      RoleState(final String nameMatch, final Device[] devices)
+      RoleState(final RoleMatcher matcher, final int width, final SettableStringValue storedHit)
       {
-         this.nameMatch = nameMatch;
-         this.devices = devices;
+         this.matcher = matcher;
+         this.matches = new BitSet(width);
+         this.storedHit = storedHit;
+         ((Setting) storedHit).hide();
+         storedHit.addValueObserver(this::restore);
       }
 
       void clearCache()
       {
          this.cachedIndex = -1;
+         this.cachedSlot = 0;
+         this.cachedName = null;
+         this.store("");
+      }
+
+      boolean isNestedHit()
+      {
+         return this.cachedIndex >= 0 && this.cachedSlot > 0;
+      }
+
+      void remember(final int index, final int slot, final String name)
+      {
+         this.cachedIndex = index;
+         this.cachedSlot = slot;
+         this.cachedName = name;
+         final String encoded = index + (slot > 0 ? SLOT_SEPARATOR + slot : "") + HIT_SEPARATOR +
+            (name == null ? "" : name);
+         this.store(encoded);
+      }
+
+      /** Every write marks the project as modified, so the setting is only written when its value changes. */
+      private void store(final String encoded)
+      {
+         if (encoded.equals(this.storedValue))
+            return;
+         this.storedValue = encoded;
+         this.storedHit.set(encoded);
+      }
+
+      /**
+       * Restore a hit written by {@link #remember(int, int, String)}, as {@code "<track index>|<device name>"}
+       * or {@code "<track index>:<slot>|<device name>"} for a nested device.
+       */
+      private void restore(final String encoded)
+      {
+         this.storedValue = encoded == null ? "" : encoded;
+         final int separator = encoded == null ? -1 : encoded.indexOf(HIT_SEPARATOR);
+         if (separator <= 0)
+            return;
+         try
+         {
+            final String location = encoded.substring(0, separator);
+            final int slotSeparator = location.indexOf(SLOT_SEPARATOR);
+            this.cachedIndex = Integer.parseInt(slotSeparator < 0 ? location : location.substring(0, slotSeparator));
+            this.cachedSlot = slotSeparator < 0 ? 0 : Integer.parseInt(location.substring(slotSeparator + 1));
+            this.cachedName = encoded.substring(separator + 1);
+         }
+         catch (final NumberFormatException e)
+         {
+            this.cachedIndex = -1;
+            this.cachedSlot = 0;
+            this.cachedName = null;
+         }
+      }
+   }
+
+   /**
+    * A pending focus request. Attempts that find nothing are retried with exponential backoff, and in live
+    * mode the request completes as soon as an observer reports a matching device. Cancelled requests never
+    * call back.
+    */
+   public final class FocusRequest
+   {
+      private final Role role;
+      private final boolean tryCacheFirst;
+      private final Consumer<Optional<FocusResult>> callback;
+      private int retries;
+      private boolean probed;
+      private boolean done;
+
+      private FocusRequest(final Role role, final boolean tryCacheFirst,
+         final Consumer<Optional<FocusResult>> callback)
+      {
+         this.role = role;
+         this.tryCacheFirst = tryCacheFirst;
+         this.callback = callback;
+      }
+
+      public boolean isDone()
+      {
+         return this.done;
+      }
+
+      /** Drop the request without calling back; a no-op once it has completed. */
+      public void cancel()
+      {
+         if (this.done)
+            return;
+         this.done = true;
+         DeviceLocator.this.release(this);
       }
    }
 
+   /** A windowed scan that is in progress for a request. */
+   private static final class Scan
+   {
+      private final FocusRequest request;
+      private int target;
+      private int settleTicks;
+      /** The position reached the target on an earlier tick, so the slot values are those of the new window. */
+      private boolean settled;
+      private boolean verifyingCache;
+
+      Scan(final FocusRequest request)
+      {
+         this.request = request;
+      }
+   }
+
+   /**
+    * Delay between window steps. Slot values are read one tick after the scroll position reached the target:
+    * the position can arrive before the values of the new window, and until then the match bits still
+    * describe the previous window or scan.
+    */
+   private static final int SCAN_TICK_MS = 20;
+   /** Ticks to wait for the scroll position to reach the requested target before using what is there. */
+   private static final int MAX_SETTLE_TICKS = 5;
+   /** First retry delay when nothing matched; doubled on each further retry. */
+   private static final int RETRY_BASE_MS = 25;
+   /** Retries before giving up (25 ms … 800 ms, about 1.6 s in total). */
+   private static final int MAX_RETRIES = 6;
+   private static final String HIT_SEPARATOR = "|";
+   private static final String SLOT_SEPARATOR = ":";
+   private static final String SETTINGS_CATEGORY = "LaunchControl XL";
+   /** Name fragment of the Arpeggiator, in English and the other languages Bitwig ships. */
+   private static final String ARPEGGIATOR_NAME_HINT = "arp";
+   private static final DeviceNameMatcher ARPEGGIATOR_NAME = new DeviceNameMatcher (ARPEGGIATOR_NAME_HINT);
+
+   private final ControllerHost host;
+   private final ScanMode mode;
    private final TrackBank trackBank;
+   private final DeviceBank[] deviceBanks;
+   private final Device[] devices;
+   private final boolean[] trackExists;
+   private final boolean[] deviceExists;
+   private final String[] deviceNames;
+   private final int[] identityKeys;
+   private final DeviceIdentity.Probe[] identityProbes;
    private final Map<Role, RoleState> states = new EnumMap<> (Role.class);
+   private final NestedDeviceProbe probe;
+   private FocusRequest pendingRequest;
+   private FocusRequest probingRequest;
+   private Scan activeScan;
 
    public DeviceLocator (final ControllerHost host, final int width)
    {
-     this.trackBank = host.createMainTrackBank (width, 0, 0);
-     for (int i = 0; i < width; i++)
-        this.trackBank.getItemAt (i).exists ().markInterested ();
+      this (host, width, ScanMode.LIVE);
+   }
 
-     this.states.put (Role.DRUM, this.createRoleState ("drum machine", width));
-     this.states.put (Role.ARP, this.createRoleState ("arpeggiator", width));
+   /**
+    * @param width Number of track slots: the whole project in {@link ScanMode#LIVE}, the window size in
+    *              {@link ScanMode#WINDOWED}.
+    */
+   public DeviceLocator (final ControllerHost host, final int width, final ScanMode mode)
+   {
+      this (host, width, mode, defaultMatchers ());
    }
 
-   private RoleState createRoleState (final String match, final int width)
+   /**
+    * @param matchers How each role is recognised; roles without a matcher are never found.
+    */
+   public DeviceLocator (final ControllerHost host, final int width, final ScanMode mode,
+      final Map<Role, RoleMatcher> matchers)
    {
-      final Device[] devices = new Device[width];
+      this.host = host;
+      this.mode = mode;
+      this.trackBank = host.createTrackBank (width, 0, 0, true);
+      this.deviceBanks = new DeviceBank[width];
+      this.devices = new Device[width];
+      this.trackExists = new boolean[width];
+      this.deviceExists = new boolean[width];
+      this.deviceNames = new String[width];
+      this.identityKeys = new int[width];
+      this.identityProbes = new DeviceIdentity.Probe[width];
+
+      final DocumentState documentState = host.getDocumentState ();
+      for (final Map.Entry<Role, RoleMatcher> entry : matchers.entrySet ())
+      {
+         final String label = entry.getKey ().label () + " location";
+         this.states.put (entry.getKey (), new RoleState (entry.getValue (), width,
+            documentState.getStringSetting (label, SETTINGS_CATEGORY, 64, "")));
+      }
+
+      this.trackBank.scrollPosition ().markInterested ();
+      this.trackBank.itemCount ().markInterested ();
+
       for (int i = 0; i < width; i++)
       {
+         final int index = i;
          final Track track = this.trackBank.getItemAt (i);
-         final Device device = track.createDeviceBank (1).getItemAt (0);
-         device.exists ().markInterested ();
-         device.name ().markInterested ();
-         devices[i] = device;
+         this.deviceBanks[i] = track.createDeviceBank (1);
+         final Device device = this.deviceBanks[i].getItemAt (0);
+         track.exists ().addValueObserver (exists -> {
+            this.trackExists[index] = exists;
+            this.updateMatches (index);
+         });
+         device.exists ().addValueObserver (exists -> {
+            this.deviceExists[index] = exists;
+            this.updateMatches (index);
+         });
+         this.identityProbes[i] = DeviceIdentity.observe (device, key -> {
+            this.identityKeys[index] = key;
+            this.updateMatches (index);
+         });
+         device.name ().addValueObserver (name -> {
+            this.deviceNames[index] = name;
+            // An unknown name may still be an Arpeggiator; a known one has to look like one.
+            this.identityProbes[index].setArpeggiatorProbed (name == null || ARPEGGIATOR_NAME.matches (name));
+            this.updateMatches (index);
+         });
+         this.devices[i] = device;
+      }
+
+      if (mode == ScanMode.WINDOWED)
+         this.setSubscribed (false);
+
+      this.probe = new NestedDeviceProbe (host);
+   }
+
+   /** Drum Machine and Arpeggiator recognised by device identity. */
+   public static Map<Role, RoleMatcher> defaultMatchers ()
+   {
+      final Map<Role, RoleMatcher> matchers = new EnumMap<> (Role.class);
+      matchers.put (Role.DRUM, RoleMatcher.identity (DeviceIdentity.DRUM_MACHINE));
+      matchers.put (Role.ARP, RoleMatcher.identity (DeviceIdentity.ARPEGGIATOR));
+      return matchers;
+   }
+
+   public ScanMode mode ()
+   {
+      return this.mode;
+   }
+
+   /** Number of device banks created for discovery (one per track slot, independent of the number of roles). */
+   public int deviceBankCount ()
+   {
+      return this.devices.length;
+   }
+
+   /**
+    * Number of host values observed for discovery: track exists, device exists, device name and the Drum
+    * Machine probe per slot, plus the Arpeggiator probe of each slot whose name is unknown or looks like an
+    * Arpeggiator. Until the names have been delivered that is 5 values per slot, after that close to 4. A
+    * windowed locator only holds these while a scan is running.
+    */
+   public int subscriptionCount ()
+   {
+      int probed = 0;
+      for (final DeviceIdentity.Probe probe : this.identityProbes)
+      {
+         if (probe.isArpeggiatorProbed ())
+            probed++;
+      }
+      return this.devices.length * 4 + probed;
+   }
+
+   /** Host values observed by the nested chain/layer probe, only while it runs. */
+   public int nestedSubscriptionCount ()
+   {
+      return this.probe.subscriptionCount ();
+   }
+
+   /**
+    * Whether the slot still holds the cached hit: it must match the role and carry the stored device name.
+    * A slot whose name has not been delivered yet (cold start) is trusted when {@code trustUndelivered}.
+    */
+   private boolean isCachedHit (final RoleState state, final int slot, final boolean trustUndelivered)
+   {
+      if (slot < 0 || slot >= this.devices.length)
+         return false;
+      final String name = this.deviceNames[slot];
+      if (name == null)
+         return trustUndelivered;
+      return state.matches.get (slot) && (state.cachedName == null || state.cachedName.equals (name));
+   }
+
+   private void updateMatches (final int index)
+   {
+      final boolean present = this.trackExists[index] && this.deviceExists[index];
+      for (final RoleState state : this.states.values ())
+      {
+         final boolean match = present && state.matcher.matches (this.identityKeys[index], this.deviceNames[index]);
+         if (match != state.matches.get (index))
+         {
+            state.matches.set (index, match);
+            state.rankIndex = -1;
+         }
+      }
+
+      final FocusRequest request = this.pendingRequest;
+      if (this.mode == ScanMode.LIVE && request != null && this.states.get (request.role).matches.get (index))
+         this.attempt (request);
+   }
+
+   /**
+    * Focus the device for a role and report the result through {@code callback}.
+    * <p>
+    * A live locator answers immediately when the device is already known; otherwise the request waits for
+    * the name observers, retrying with backoff. A windowed locator subscribes, steps its window through the
+    * project across several host ticks and unsubscribes once the callback has run; the track and device of
+    * the result are only valid inside the callback. A new request cancels one that is still pending.
+    *
+    * @param tryCacheFirst Whether the cached index should be tried before scanning from the first track.
+    * @return The request, so the caller can cancel it (for example when the template changes again).
+    */
+   public FocusRequest requestFocus (final Role role, final boolean tryCacheFirst,
+      final Consumer<Optional<FocusResult>> callback)
+   {
+      if (this.pendingRequest != null)
+         this.pendingRequest.cancel ();
+
+      final FocusRequest request = new FocusRequest (role, tryCacheFirst, callback);
+      if (!this.states.containsKey (role))
+      {
+         this.complete (request, Optional.empty ());
+         return request;
+      }
+
+      this.pendingRequest = request;
+      this.attempt (request);
+      return request;
+   }
+
+   private void attempt (final FocusRequest request)
+   {
+      if (request.done)
+         return;
+
+      if (this.mode == ScanMode.LIVE)
+      {
+         Optional<FocusResult> result = request.tryCacheFirst ? this.focusCached (request.role) : Optional.empty ();
+         if (result.isEmpty ())
+            result = this.focusFirst (request.role);
+         if (result.isPresent ())
+            this.complete (request, result);
+         else
+            this.probeOrRetry (request);
+         return;
+      }
+
+      final RoleState state = this.states.get (request.role);
+      final Scan scan = new Scan (request);
+      scan.verifyingCache = request.tryCacheFirst && state.cachedIndex >= 0 && !state.isNestedHit ();
+      this.activeScan = scan;
+      this.setSubscribed (true);
+      this.scrollTo (scan, scan.verifyingCache ? state.cachedIndex : 0);
+   }
+
+   /**
+    * Nothing matched among the first devices: search nested chains and layers once per request, then fall
+    * back to the backoff retries.
+    */
+   private void probeOrRetry (final FocusRequest request)
+   {
+      if (request.probed)
+      {
+         this.scheduleRetry (request);
+         return;
+      }
+
+      request.probed = true;
+      final RoleState state = this.states.get (request.role);
+      final boolean useHint = request.tryCacheFirst && state.isNestedHit ();
+      this.probingRequest = request;
+      this.probe.start (state.matcher, useHint ? state.cachedIndex : -1, useHint ? state.cachedSlot : -1,
+         state.cachedName, (trackIndex, slot, track, device, name) -> {
+            this.probingRequest = null;
+            if (slot < 0)
+            {
+               if (state.isNestedHit ())
+                  state.clearCache ();
+               this.scheduleRetry (request);
+               return;
+            }
+            state.remember (trackIndex, slot, name);
+            this.complete (request, Optional.of (new FocusResult (trackIndex, track, device)));
+         });
+   }
+
+   private void scheduleRetry (final FocusRequest request)
+   {
+      if (request.retries >= MAX_RETRIES)
+      {
+         this.complete (request, Optional.empty ());
+         return;
+      }
+      final int delay = RETRY_BASE_MS << request.retries;
+      request.retries++;
+      this.host.scheduleTask (() -> this.attempt (request), delay);
+   }
+
+   private void complete (final FocusRequest request, final Optional<FocusResult> result)
+   {
+      request.done = true;
+      this.release (request);
+      request.callback.accept (result);
+      if (this.activeScan == null && this.mode == ScanMode.WINDOWED)
+         this.setSubscribed (false);
+   }
+
+   private void release (final FocusRequest request)
+   {
+      if (this.pendingRequest == request)
+         this.pendingRequest = null;
+      if (this.activeScan != null && this.activeScan.request == request)
+      {
+         this.activeScan = null;
+         this.setSubscribed (false);
+      }
+      if (this.probingRequest == request)
+      {
+         this.probingRequest = null;
+         this.probe.cancel ();
+      }
+   }
+
+   private void scrollTo (final Scan scan, final int target)
+   {
+      scan.target = target;
+      scan.settleTicks = 0;
+      scan.settled = false;
+      this.trackBank.scrollPosition ().set (target);
+      this.host.scheduleTask (() -> this.stepScan (scan), SCAN_TICK_MS);
+   }
+
+   private void stepScan (final Scan scan)
+   {
+      if (scan != this.activeScan)
+         return;
+
+      final int position = this.trackBank.scrollPosition ().get ();
+      if (position != scan.target && ++scan.settleTicks < MAX_SETTLE_TICKS)
+      {
+         this.host.scheduleTask (() -> this.stepScan (scan), SCAN_TICK_MS);
+         return;
+      }
+      if (!scan.settled)
+      {
+         scan.settled = true;
+         this.host.scheduleTask (() -> this.stepScan (scan), SCAN_TICK_MS);
+         return;
+      }
+
+      final RoleState state = this.states.get (scan.request.role);
+      if (scan.verifyingCache)
+      {
+         scan.verifyingCache = false;
+         final int slot = state.cachedIndex - position;
+         if (this.isCachedHit (state, slot, false))
+         {
+            this.completeScan (scan, position, slot);
+            return;
+         }
+         state.clearCache ();
+         this.scrollTo (scan, 0);
+         return;
+      }
+
+      final int slot = state.matches.nextSetBit (0);
+      if (slot >= 0)
+      {
+         this.completeScan (scan, position, slot);
+         return;
+      }
+
+      final int next = position + this.devices.length;
+      if (next >= this.trackBank.itemCount ().get ())
+      {
+         this.completeScan (scan, position, -1);
+         return;
+      }
+      this.scrollTo (scan, next);
+   }
+
+   private void completeScan (final Scan scan, final int position, final int slot)
+   {
+      final RoleState state = this.states.get (scan.request.role);
+      this.activeScan = null;
+      if (slot < 0)
+      {
+         if (!state.isNestedHit ())
+            state.clearCache ();
+         this.setSubscribed (false);
+         this.probeOrRetry (scan.request);
+         return;
       }
-      return new RoleState (match == null ? null : match.toLowerCase (), devices);
+
+      state.remember (position + slot, 0, this.deviceNames[slot]);
+      this.complete (scan.request,
+         Optional.of (new FocusResult (position + slot, this.trackBank.getItemAt (slot), this.devices[slot])));
+   }
+
+   private void setSubscribed (final boolean subscribed)
+   {
+      this.trackBank.setIsSubscribed (subscribed);
+      for (final DeviceBank deviceBank : this.deviceBanks)
+         deviceBank.setIsSubscribed (subscribed);
    }
 
    /**
-    * Try to focus the cached device index for the role (if one exists).
+    * Try to focus the cached device index for the role (if one exists). The cache survives project reloads;
+    * when the slot's values have not arrived yet the stored hit is used as is. Only sees the current window
+    * of a {@link ScanMode#WINDOWED} locator; use {@link #requestFocus(Role, boolean, Consumer)} there.
     *
     * @return Empty if no cache exists or focus failed.
     */
    public Optional<FocusResult> focusCached (final Role role)
    {
       final RoleState state = this.states.get (role);
-      if (state == null || state.cachedIndex < 0)
+      if (state == null || state.cachedIndex < 0 || state.isNestedHit ())
          return Optional.empty ();
 
-      final Optional<FocusResult> result = this.focus (role, state.cachedIndex);
-      if (result.isEmpty ())
+      final int index = state.cachedIndex;
+      if (!this.isCachedHit (state, index, true))
+      {
          state.clearCache ();
-      return result;
+         return Optional.empty ();
+      }
+      return Optional.of (new FocusResult (index, this.trackBank.getItemAt (index), this.devices[index]));
    }
 
    /**
-    * Scan all tracks for the first matching device of the given role and cache the index.
+    * Find the first track holding a matching device of the given role and cache the index. Only sees the
+    * current window of a {@link ScanMode#WINDOWED} locator; use {@link #requestFocus(Role, boolean, Consumer)}
+    * there.
     */
    public Optional<FocusResult> focusFirst (final Role role)
    {
@@ -120,21 +657,95 @@ public final class DeviceLocator
       if (state == null)
          return Optional.empty ();
 
-      final int index = this.findFirstMatchingIndex (state);
+      final int index = state.matches.nextSetBit (0);
       if (index < 0)
       {
-         state.clearCache ();
+         // A nested hit is verified by the probe, not here.
+         if (!state.isNestedHit ())
+            state.clearCache ();
          return Optional.empty ();
       }
 
       final Optional<FocusResult> result = this.focus (role, index);
       if (result.isPresent ())
-         state.cachedIndex = index;
+         state.remember (index, 0, this.deviceNames[index]);
       else
          state.clearCache ();
       return result;
    }
 
+   /**
+    * Step from the current hit to the next ({@code direction > 0}) or previous matching device, wrapping
+    * around. The per-role index already holds every match in track order, so a step is a single
+    * {@link BitSet#nextSetBit(int)}/{@link BitSet#previousSetBit(int)}. Only available in
+    * {@link ScanMode#LIVE}; a windowed locator does not know the matches outside its window.
+    */
+   public Optional<FocusResult> focusAdjacent (final Role role, final int direction)
+   {
+      final RoleState state = this.states.get (role);
+      if (state == null || this.mode != ScanMode.LIVE)
+         return Optional.empty ();
+
+      final BitSet matches = state.matches;
+      final int current = state.isNestedHit () ? -1 : state.cachedIndex;
+      final boolean ranked = current >= 0 && state.rankIndex == current;
+      int index;
+      if (direction >= 0)
+      {
+         index = matches.nextSetBit (current + 1);
+         state.rank = ranked ? state.rank + 1 : 0;
+         if (index < 0)
+         {
+            index = matches.nextSetBit (0);
+            state.rank = 1;
+         }
+      }
+      else
+      {
+         index = current > 0 ? matches.previousSetBit (current - 1) : -1;
+         state.rank = ranked ? state.rank - 1 : 0;
+         if (index < 0)
+         {
+            index = matches.previousSetBit (this.devices.length - 1);
+            state.rank = matches.cardinality ();
+         }
+      }
+      if (index < 0)
+         return Optional.empty ();
+
+      state.rankIndex = state.rank > 0 ? index : -1;
+      state.remember (index, 0, this.deviceNames[index]);
+      return Optional.of (new FocusResult (index, this.trackBank.getItemAt (index), this.devices[index]));
+   }
+
+   /** Number of tracks whose first device matches the role. */
+   public int matchCount (final Role role)
+   {
+      final RoleState state = this.states.get (role);
+      return state == null ? 0 : state.matches.cardinality ();
+   }
+
+   /**
+    * 1-based position of the track among the role's matches, or 0 when it is not a match. Constant time for
+    * the hit reached by {@link #focusAdjacent(Role, int)}; the matches are only counted again after the match
+    * set changed or for another track.
+    */
+   public int matchRank (final Role role, final int trackIndex)
+   {
+      final RoleState state = this.states.get (role);
+      if (state == null || trackIndex < 0 || trackIndex >= this.devices.length || !state.matches.get (trackIndex))
+         return 0;
+      if (state.rankIndex == trackIndex)
+         return state.rank;
+
+      int rank = 0;
+      for (int i = state.matches.nextSetBit (0); i >= 0 && i <= trackIndex; i = state.matches.nextSetBit (i + 1))
+         rank++;
+      state.rankIndex = trackIndex;
+      state.rank = rank;
+      return rank;
+   }
+
    /** Clear the cached index for the given role. */
    public void clearCache (final Role role)
    {
@@ -150,37 +761,12 @@ public final class DeviceLocator
    private Optional<FocusResult> focus (final Role role, final int index)
    {
       final RoleState state = this.states.get (role);
-      if (state == null || index < 0 || index >= state.devices.length)
-         return Optional.empty ();
-
-      final Track track = this.trackBank.getItemAt (index);
-      if (track == null || !track.exists ().get ())
-         return Optional.empty ();
-
-      final Device device = state.devices[index];
-      if (device == null || !device.exists ().get ())
+      if (state == null || index < 0 || index >= this.devices.length)
          return Optional.empty ();
 
-      final String name = device.name ().get ();
-      if (state.nameMatch != null && (name == null || !name.toLowerCase ().contains (state.nameMatch)))
+      if (!state.matches.get (index))
          return Optional.empty ();
 
-      return Optional.of (new FocusResult (index, track, device));
-   }
-
-   private int findFirstMatchingIndex (final RoleState state)
-   {
-      for (int i = 0; i < state.devices.length; i++)
-      {
-         final Device device = state.devices[i];
-         if (device == null || !device.exists ().get ())
-            continue;
-
-         final String name = device.name ().get ();
-         if (state.nameMatch != null && (name == null || !name.toLowerCase ().contains (state.nameMatch)))
-            continue;
-         return i;
-      }
-      return -1;
+      return Optional.of (new FocusResult (index, this.trackBank.getItemAt (index), this.devices[index]));
    }
 }
@@ -0,0 +1,56 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.support;
+
+/**
+ * Case-insensitive substring matcher for device names.
+ * <p>
+ * The fragment is folded to upper and lower case once at construction, so {@link #matches(CharSequence)}
+ * compares characters in place and never allocates (unlike {@code name.toLowerCase().contains(...)}).
+ */
+public final class DeviceNameMatcher
+{
+   private final char[] lower;
+   private final char[] upper;
+
+   /**
+    * @param fragment Text that must occur somewhere in the device name. {@code null} or empty matches
+    *                 every name.
+    */
+   public DeviceNameMatcher(final String fragment)
+   {
+      final int length = fragment == null ? 0 : fragment.length();
+      this.lower = new char[length];
+      this.upper = new char[length];
+      for (int i = 0; i < length; i++)
+      {
+         final char c = fragment.charAt(i);
+         this.lower[i] = Character.toLowerCase(c);
+         this.upper[i] = Character.toUpperCase(c);
+      }
+   }
+
+   /** @return True when the fragment occurs in {@code name}, ignoring case. */
+   public boolean matches(final CharSequence name)
+   {
+      final int fragmentLength = this.lower.length;
+      if (fragmentLength == 0)
+         return true;
+      if (name == null)
+         return false;
+
+      final int last = name.length() - fragmentLength;
+      for (int start = 0; start <= last; start++)
+      {
+         int j = 0;
+         while (j < fragmentLength)
+         {
+            final char c = name.charAt(start + j);
+            if (c != this.lower[j] && c != this.upper[j])
+               break;
+            j++;
+         }
+         if (j == fragmentLength)
+            return true;
+      }
+      return false;
+   }
+}
@@ -0,0 +1,252 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.support;
+
+import com.bitwig.extension.controller.api.ControllerHost;
+import com.bitwig.extension.controller.api.Device;
+import com.bitwig.extension.controller.api.DeviceBank;
+import com.bitwig.extension.controller.api.DeviceLayerBank;
+import com.bitwig.extension.controller.api.Track;
+import com.bitwig.extension.controller.api.TrackBank;
+
+/**
+ * Searches device chains one track at a time, including the devices inside the layers of each chain device
+ * (Instrument Layer, FX Layer, ...).
+ * <p>
+ * The probe owns a one-track window on the flattened track tree (same indices as {@link DeviceLocator})
+ * with a fixed tree of banks below it: {@link #CHAIN_DEPTH} chain devices, {@link #LAYER_WIDTH} layers per
+ * chain device and {@link #LAYER_DEPTH} devices per layer. Everything is unsubscribed while idle. A probe
+ * steps the window from track to track across host ticks and evaluates at most {@link #SLOTS_PER_TICK} device
+ * slots per tick, so a large project never stalls the controller thread.
+ * <p>
+ * The slots of a track are read one tick after the scroll position reached it: the position can arrive
+ * before the device values of the new track, which would otherwise be read from the previous one.
+ * <p>
+ * A slot index identifies a device on a track: {@code 0 .. CHAIN_DEPTH - 1} are the chain devices, higher
+ * indices are layer devices, grouped per chain device and then per layer.
+ */
+final class NestedDeviceProbe
+{
+   /** Receives the result of a probe; {@code slot} is -1 when nothing matched. */
+   interface Listener
+   {
+      void probeFinished(int trackIndex, int slot, Track track, Device device, String name);
+   }
+
+   static final int CHAIN_DEPTH = 8;
+   static final int LAYER_WIDTH = 4;
+   static final int LAYER_DEPTH = 4;
+   static final int SLOT_COUNT = CHAIN_DEPTH * (1 + LAYER_WIDTH * LAYER_DEPTH);
+
+   private static final int SLOTS_PER_TICK = 32;
+   private static final int TICK_MS = 20;
+   private static final int MAX_SETTLE_TICKS = 5;
+   private static final int NESTED_PER_CHAIN_DEVICE = LAYER_WIDTH * LAYER_DEPTH;
+
+   private final ControllerHost host;
+   private final TrackBank trackBank;
+   private final DeviceBank chainBank;
+   private final DeviceLayerBank[] layerBanks = new DeviceLayerBank[CHAIN_DEPTH];
+   private final DeviceBank[] layerDeviceBanks = new DeviceBank[CHAIN_DEPTH * LAYER_WIDTH];
+   private final Device[] slots = new Device[SLOT_COUNT];
+   private final boolean[] slotExists = new boolean[SLOT_COUNT];
+   private final String[] slotNames = new String[SLOT_COUNT];
+   private final int[] slotKeys = new int[SLOT_COUNT];
+
+   private RoleMatcher matcher;
+   private Listener listener;
+   private int hintTrack = -1;
+   private int hintSlot = -1;
+   private String hintName;
+   private int track;
+   private int nextSlot;
+   private int settleTicks;
+   private boolean settled;
+   private int generation;
+   private boolean running;
+
+   NestedDeviceProbe(final ControllerHost host)
+   {
+      this.host = host;
+      this.trackBank = host.createTrackBank(1, 0, 0, true);
+      this.trackBank.scrollPosition().markInterested();
+      this.trackBank.itemCount().markInterested();
+
+      this.chainBank = this.trackBank.getItemAt(0).createDeviceBank(CHAIN_DEPTH);
+      for (int c = 0; c < CHAIN_DEPTH; c++)
+      {
+         final Device chainDevice = this.chainBank.getItemAt(c);
+         this.observe(c, chainDevice);
+
+         this.layerBanks[c] = chainDevice.createLayerBank(LAYER_WIDTH);
+         for (int l = 0; l < LAYER_WIDTH; l++)
+         {
+            final DeviceBank devices = this.layerBanks[c].getItemAt(l).createDeviceBank(LAYER_DEPTH);
+            this.layerDeviceBanks[c * LAYER_WIDTH + l] = devices;
+            for (int d = 0; d < LAYER_DEPTH; d++)
+               this.observe(CHAIN_DEPTH + c * NESTED_PER_CHAIN_DEVICE + l * LAYER_DEPTH + d, devices.getItemAt(d));
+         }
+      }
+      this.setSubscribed(false);
+   }
+
+   private void observe(final int slot, final Device device)
+   {
+      this.slots[slot] = device;
+      device.exists().addValueObserver(exists -> this.slotExists[slot] = exists);
+      device.name().addValueObserver(name -> this.slotNames[slot] = name);
+      DeviceIdentity.observe(device, key -> this.slotKeys[slot] = key);
+   }
+
+   /** Host values observed while a probe runs (device exists, name and the two identity probes per slot). */
+   int subscriptionCount()
+   {
+      return SLOT_COUNT * 4;
+   }
+
+   /**
+    * Start probing every track for a device the matcher accepts. When a hint is given, that track/slot is
+    * checked first and accepted if it still carries {@code hintName}.
+    */
+   void start(final RoleMatcher matcher, final int hintTrack, final int hintSlot, final String hintName,
+      final Listener listener)
+   {
+      this.cancel();
+      this.matcher = matcher;
+      this.listener = listener;
+      this.hintTrack = hintSlot >= 0 && hintSlot < SLOT_COUNT ? hintTrack : -1;
+      this.hintSlot = hintSlot;
+      this.hintName = hintName;
+      this.running = true;
+      this.setSubscribed(true);
+      this.scrollTo(this.hintTrack >= 0 ? this.hintTrack : 0);
+   }
+
+   /** Stop a running probe without notifying its listener. */
+   void cancel()
+   {
+      if (!this.running)
+         return;
+      this.running = false;
+      this.generation++;
+      this.listener = null;
+      this.setSubscribed(false);
+   }
+
+   private void scrollTo(final int trackIndex)
+   {
+      this.track = trackIndex;
+      this.nextSlot = 0;
+      this.settleTicks = 0;
+      this.settled = false;
+      this.trackBank.scrollPosition().set(trackIndex);
+      this.scheduleStep();
+   }
+
+   private void scheduleStep()
+   {
+      final int expected = this.generation;
+      this.host.scheduleTask(() -> {
+         if (this.running && this.generation == expected)
+            this.step();
+      }, TICK_MS);
+   }
+
+   private void step()
+   {
+      if (this.trackBank.scrollPosition().get() != this.track)
+      {
+         if (++this.settleTicks < MAX_SETTLE_TICKS)
+         {
+            this.scheduleStep();
+            return;
+         }
+         // The bank did not reach the track, so it no longer exists.
+         if (this.hintTrack >= 0)
+         {
+            this.hintTrack = -1;
+            this.scrollTo(0);
+         }
+         else
+         {
+            this.finish(-1);
+         }
+         return;
+      }
+      if (!this.settled)
+      {
+         this.settled = true;
+         this.scheduleStep();
+         return;
+      }
+
+      if (this.hintTrack >= 0)
+      {
+         final int slot = this.hintSlot;
+         this.hintTrack = -1;
+         if (this.slotExists[slot] && this.slotNames[slot] != null && this.slotNames[slot].equals(this.hintName)
+            && this.matcher.matches(this.slotKeys[slot], this.slotNames[slot]))
+         {
+            this.finish(slot);
+            return;
+         }
+         this.scrollTo(0);
+         return;
+      }
+
+      int budget = SLOTS_PER_TICK;
+      while (this.nextSlot < SLOT_COUNT && budget > 0)
+      {
+         final int slot = this.nextSlot;
+         if (slot >= CHAIN_DEPTH && !this.slotExists[(slot - CHAIN_DEPTH) / NESTED_PER_CHAIN_DEVICE])
+         {
+            // No chain device, so none of its layers: skip the whole group.
+            this.nextSlot = CHAIN_DEPTH + ((slot - CHAIN_DEPTH) / NESTED_PER_CHAIN_DEVICE + 1) * NESTED_PER_CHAIN_DEVICE;
+            budget--;
+            continue;
+         }
+         if (this.slotExists[slot] && this.matcher.matches(this.slotKeys[slot], this.slotNames[slot]))
+         {
+            this.finish(slot);
+            return;
+         }
+         this.nextSlot++;
+         budget--;
+      }
+
+      if (this.nextSlot < SLOT_COUNT)
+      {
+         this.scheduleStep();
+         return;
+      }
+
+      if (this.track + 1 >= this.trackBank.itemCount().get())
+      {
+         this.finish(-1);
+         return;
+      }
+      this.scrollTo(this.track + 1);
+   }
+
+   private void finish(final int slot)
+   {
+      final Listener target = this.listener;
+      final int trackIndex = this.track;
+      final String name = slot < 0 ? null : this.slotNames[slot];
+      this.running = false;
+      this.generation++;
+      this.listener = null;
+      if (target != null)
+         target.probeFinished(trackIndex, slot, this.trackBank.getItemAt(0), slot < 0 ? null : this.slots[slot], name);
+      if (!this.running)
+         this.setSubscribed(false);
+   }
+
+   private void setSubscribed(final boolean subscribed)
+   {
+      this.trackBank.setIsSubscribed(subscribed);
+      this.chainBank.setIsSubscribed(subscribed);
+      for (final DeviceLayerBank layerBank : this.layerBanks)
+         layerBank.setIsSubscribed(subscribed);
+      for (final DeviceBank deviceBank : this.layerDeviceBanks)
+         deviceBank.setIsSubscribed(subscribed);
+   }
+}
@@ -0,0 +1,25 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.support;
+
+/**
+ * Decides whether a device slot fills a {@link DeviceLocator.Role}, given the slot's
+ * {@link DeviceIdentity} key and its device name. Implementations must not allocate; they run from the
+ * host's value observers.
+ */
+@FunctionalInterface
+public interface RoleMatcher
+{
+   boolean matches(int identityKey, CharSequence name);
+
+   /** Match Bitwig devices of the given {@link DeviceIdentity} type(s), whatever they are called. */
+   static RoleMatcher identity(final int identityMask)
+   {
+      return (identityKey, name) -> (identityKey & identityMask) != 0;
+   }
+
+   /** Match devices whose name contains {@code fragment}, ignoring case (for plug-ins and presets). */
+   static RoleMatcher name(final String fragment)
+   {
+      final DeviceNameMatcher matcher = new DeviceNameMatcher(fragment);
+      return (identityKey, name) -> matcher.matches(name);
+   }
+}
@@ -6,6 +6,10 @@ public final class MusicalScale
    {
       mName = name;
       mNotes = notes;
+      int mask = 0;
+      for (final int note : notes)
+         mask |= 1 << (note % 12);
+      mMask = mask;
    }
 
    public final int[] getNotes()
@@ -18,6 +22,12 @@ public final class MusicalScale
       return mName;
    }
 
+   /** @return The notes of the scale as a 12-bit mask, bit 0 being the root. */
+   public final int getMask()
+   {
+      return mMask;
+   }
+
    public final boolean isRootMidiNote(final int midiRootKey, final int midiNote)
    {
       return (midiNote - midiRootKey) % 12 == 0;
@@ -34,11 +44,7 @@ public final class MusicalScale
       midiNote %= 12;
 
       // check if the note is in the scale
-      for (final int note : mNotes)
-         if (midiNote == note)
-            return true;
-
-      return false;
+      return (mMask & (1 << midiNote)) != 0;
    }
 
    public void setIndexInLibrary(final int indexInLibrary)
@@ -77,6 +83,7 @@ public final class MusicalScale
    }
 
    private final int[] mNotes;
+   private final int mMask;
    private final String mName;
    private int mIndexInLibrary;
 }
@@ -20,6 +20,10 @@ public class TimeRepeatEvent extends AbstractTimedEvent {
       this.action = repeat -> runAction.run();
    }
 
+   @Override
+   public long nextProcessTime() {
+      return repeatTimer == -1 ? startTime + delayTime + 1 : repeatTimer + repeatTime;
+   }
 
    @Override
    public void process() {
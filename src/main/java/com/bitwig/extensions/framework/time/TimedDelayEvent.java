@@ -8,6 +8,11 @@ public class TimedDelayEvent extends AbstractTimedEvent {
       this.timedAction = timedAction;
    }
 
+   @Override
+   public long nextProcessTime() {
+      return startTime + delayTime;
+   }
+
    public void process() {
       if (completed) {
          return;
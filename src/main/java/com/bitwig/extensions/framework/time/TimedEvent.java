@@ -11,4 +11,12 @@ public interface TimedEvent {
    void cancel();
 
    void process();
+
+   /**
+    * @return the {@link System#currentTimeMillis()} time from which {@link #process()} can act; 0 if it has to be
+    *         polled. Used by {@link TimingWheel} to call {@code process()} only when it is due.
+    */
+   default long nextProcessTime() {
+      return 0;
+   }
 }
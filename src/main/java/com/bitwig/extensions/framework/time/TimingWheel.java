@@ -0,0 +1,276 @@
+package com.bitwig.extensions.framework.time;
+
+import java.util.function.LongSupplier;
+
+import com.bitwig.extension.controller.api.ControllerHost;
+
+/**
+ * Hashed timing wheel for delayed and repeating tasks. Tasks are kept in a ring of buckets, one per tick,
+ * as doubly linked lists, so scheduling and cancelling are constant time; a tick only visits its own bucket.
+ * Tasks further away than one turn of the wheel stay in their bucket until their tick comes round.
+ * <p>
+ * The wheel is driven by {@link ControllerHost#scheduleTask(Runnable, long)} and measures time with
+ * {@link System#nanoTime()}. It does not poll: a host task is only pending while there are tasks, and it is
+ * scheduled for the earliest tick that has one. Everything due in one tick runs in the same host callback;
+ * ticks missed because the host ran late are caught up in order. After an idle period the wheel restarts at
+ * the current tick, so the idle ticks are not replayed.
+ * <p>
+ * {@link TimedEvent}s can be queued as they are, see {@link #queue(TimedEvent)}.
+ */
+public class TimingWheel {
+   public static final int DEFAULT_TICK_MS = 5;
+   public static final int DEFAULT_SLOTS = 256;
+   private static final long NO_TICK = Long.MAX_VALUE;
+
+   /** Runs a callback after a delay in milliseconds, like {@link ControllerHost#scheduleTask(Runnable, long)}. */
+   @FunctionalInterface
+   public interface Scheduler {
+      void schedule(Runnable callback, long delayMs);
+   }
+
+   /** A scheduled task; keep it to cancel the task. */
+   public static class Task {
+      private final Runnable action;
+      private final long periodNanos;
+      private long deadline;
+      private long tick;
+      private Task previous;
+      private Task next;
+      private Task nextDue;
+      private boolean linked;
+      private boolean cancelled;
+
+      private Task(final Runnable action, final long periodNanos) {
+         this.action = action;
+         this.periodNanos = periodNanos;
+      }
+
+      public boolean isCancelled() {
+         return cancelled;
+      }
+
+      /** @return true if the task runs again, at {@link #nextDeadline(long)} */
+      boolean run() {
+         action.run();
+         return periodNanos > 0;
+      }
+
+      /** Repeats keep to their period; repeats the host was too late for are skipped rather than bunched. */
+      long nextDeadline(final long now) {
+         long next = deadline + periodNanos;
+         while (next <= now) {
+            next += periodNanos;
+         }
+         return next;
+      }
+   }
+
+   private final Scheduler scheduler;
+   private final LongSupplier clock;
+   private final long tickNanos;
+   private final Task[] buckets;
+   private final int mask;
+   private final long start;
+   private long currentTick;
+   private int pending;
+   /** Earliest tick a host wake-up is pending for, or {@link #NO_TICK}. */
+   private long scheduledTick = NO_TICK;
+
+   public TimingWheel(final ControllerHost host) {
+      this(host::scheduleTask, System::nanoTime, DEFAULT_TICK_MS, DEFAULT_SLOTS);
+   }
+
+   /**
+    * @param tickMs resolution of the wheel
+    * @param slots  number of buckets, rounded up to a power of two
+    */
+   public TimingWheel(final Scheduler scheduler, final LongSupplier clock, final int tickMs, final int slots) {
+      this.scheduler = scheduler;
+      this.clock = clock;
+      this.tickNanos = tickMs * 1_000_000L;
+      final int size = Integer.highestOneBit(Math.max(1, slots - 1)) << 1;
+      this.buckets = new Task[size];
+      this.mask = size - 1;
+      this.start = clock.getAsLong();
+   }
+
+   /** Run an action once after {@code delayMs}. */
+   public Task schedule(final Runnable action, final long delayMs) {
+      return scheduleRepeating(action, delayMs, 0);
+   }
+
+   /** Run an action after {@code delayMs} and then every {@code periodMs} until it is cancelled. */
+   public Task scheduleRepeating(final Runnable action, final long delayMs, final long periodMs) {
+      final Task task = new Task(action, periodMs * 1_000_000L);
+      insert(task, clock.getAsLong() + delayMs * 1_000_000L);
+      return task;
+   }
+
+   /**
+    * Process a {@link TimedEvent} on the wheel instead of polling it. The event's {@code process()} is called
+    * at its {@link TimedEvent#nextProcessTime()} until it is completed or cancelled.
+    */
+   public Task queue(final TimedEvent event) {
+      final Task task = new EventTask(event);
+      insert(task, clock.getAsLong() + EventTask.delayNanos(event));
+      return task;
+   }
+
+   public void cancel(final Task task) {
+      task.cancelled = true;
+      if (task.linked) {
+         unlink(task);
+      }
+   }
+
+   /** @return number of tasks waiting to run */
+   public int size() {
+      return pending;
+   }
+
+   private void insert(final Task task, final long deadline) {
+      if (pending == 0 && scheduledTick == NO_TICK) {
+         // Idle: start counting from now instead of from the last tick that ran.
+         currentTick = Math.max(currentTick, (clock.getAsLong() - start) / tickNanos);
+      }
+      task.deadline = deadline;
+      task.tick = Math.max(Math.floorDiv(deadline - start + tickNanos - 1, tickNanos), currentTick + 1);
+      final int bucket = (int) (task.tick & mask);
+      task.previous = null;
+      task.next = buckets[bucket];
+      if (task.next != null) {
+         task.next.previous = task;
+      }
+      buckets[bucket] = task;
+      task.linked = true;
+      pending++;
+      wakeAt(task.tick);
+   }
+
+   private void unlink(final Task task) {
+      if (task.previous != null) {
+         task.previous.next = task.next;
+      } else {
+         buckets[(int) (task.tick & mask)] = task.next;
+      }
+      if (task.next != null) {
+         task.next.previous = task.previous;
+      }
+      task.previous = null;
+      task.next = null;
+      task.linked = false;
+      pending--;
+   }
+
+   /**
+    * Have the host call {@link #tick(long)} at {@code tick}, unless a wake-up for that tick or an earlier one
+    * is pending already. A wake-up that was overtaken by an earlier one still comes and only finds nothing
+    * due.
+    */
+   private void wakeAt(final long tick) {
+      if (tick >= scheduledTick) {
+         return;
+      }
+      scheduledTick = tick;
+      final long delayMs = Math.max(0, (start + tick * tickNanos - clock.getAsLong() + 999_999) / 1_000_000);
+      scheduler.schedule(() -> tick(tick), delayMs);
+   }
+
+   /** @return the earliest tick with a task; only valid while {@link #pending} is not 0 */
+   private long earliestTick() {
+      long earliest = NO_TICK;
+      for (int offset = 1; offset <= buckets.length; offset++) {
+         final long tick = currentTick + offset;
+         for (Task task = buckets[(int) (tick & mask)]; task != null; task = task.next) {
+            if (task.tick == tick) {
+               return tick;
+            }
+            earliest = Math.min(earliest, task.tick);
+         }
+      }
+      // Every task is more than one turn away.
+      return earliest;
+   }
+
+   /**
+    * @param wakeTick the tick the host wake-up was scheduled for; the host may call a little before it is
+    *                 reached, and then the wake-up is scheduled again for the remaining time
+    */
+   private void tick(final long wakeTick) {
+      if (wakeTick == scheduledTick) {
+         scheduledTick = NO_TICK;
+      }
+      final long target = (clock.getAsLong() - start) / tickNanos;
+      while (currentTick < target && pending > 0) {
+         currentTick++;
+         runBucket(currentTick);
+      }
+      if (pending == 0) {
+         currentTick = Math.max(currentTick, target);
+      }
+      if (scheduledTick <= currentTick) {
+         scheduledTick = NO_TICK;
+      }
+      if (pending > 0) {
+         wakeAt(earliestTick());
+      }
+   }
+
+   private void runBucket(final long tick) {
+      Task due = null;
+      Task task = buckets[(int) (tick & mask)];
+      while (task != null) {
+         final Task next = task.next;
+         if (task.tick <= tick) {
+            unlink(task);
+            task.nextDue = due;
+            due = task;
+         }
+         task = next;
+      }
+      // The batch is unlinked before it runs, so actions may schedule or cancel any task.
+      while (due != null) {
+         final Task current = due;
+         due = current.nextDue;
+         current.nextDue = null;
+         if (current.cancelled) {
+            continue;
+         }
+         if (current.run() && !current.cancelled) {
+            insert(current, current.nextDeadline(clock.getAsLong()));
+         }
+      }
+   }
+
+   /**
+    * Runs a {@link TimedEvent}. Events give their due time as a {@link System#currentTimeMillis()} timestamp,
+    * while the wheel keeps deadlines on its own clock; each due time is turned into a delay from the current
+    * wall-clock time and that delay is added to the wheel clock's now, so the two clocks are never compared.
+    */
+   private static final class EventTask extends Task {
+      private final TimedEvent event;
+
+      private EventTask(final TimedEvent event) {
+         super(event::process, 0);
+         this.event = event;
+      }
+
+      private static long delayNanos(final TimedEvent event) {
+         return Math.max(0, event.nextProcessTime() - System.currentTimeMillis()) * 1_000_000L;
+      }
+
+      @Override
+      boolean run() {
+         if (event.isCompleted()) {
+            return false;
+         }
+         event.process();
+         return !event.isCompleted();
+      }
+
+      @Override
+      long nextDeadline(final long now) {
+         return now + delayNanos(event);
+      }
+   }
+}
@@ -0,0 +1,79 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.arp;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ArpInstanceStateTest {
+
+   private static final ArpParameterContainer NO_DEVICE = new ArpParameterContainer() {
+      @Override
+      public void applyGateValueToParameter(final int index, final double value) {
+      }
+
+      @Override
+      public double getGateValue(final int index) {
+         return 0.5;
+      }
+
+      @Override
+      public void applyNoteValueToParameter(final int index, final double value) {
+      }
+   };
+
+   @Test
+   void packedStateRoundTrips() {
+      final ArpInstance source = new ArpInstance("Lead", NO_DEVICE, QuantizeMode.MUTE);
+      source.storeVelocity(3, 0.75);
+      source.storeGate(15, 0.125);
+      source.setBaseNote(2, -24);
+      source.setOffsetNote(2, 7);
+      source.toggleQuantizeNote(1);
+
+      final ByteBuffer buffer = ByteBuffer.allocate(ArpInstance.STATE_BYTES);
+      source.writeState(buffer);
+      assertEquals(ArpInstance.STATE_BYTES, buffer.position());
+
+      final ArpInstance target = new ArpInstance("Lead", NO_DEVICE, QuantizeMode.MUTE);
+      target.readState(ByteBuffer.wrap(buffer.array()));
+      assertEquals(0.75, target.getStoredVelocity(3));
+      assertEquals(0.125, target.getStoredGate(15));
+      assertEquals(source.getGateMute(2), target.getGateMute(2));
+      assertEquals(source.getNoteValue(2), target.getNoteValue(2));
+      assertFalse(target.isQuantizeNoteSet(1));
+      assertTrue(target.isQuantizeNoteSet(0));
+   }
+
+   @Test
+   void stepStateRoundTrips() {
+      final ArpStepState source = new ArpStepState();
+      source.knobPitchOffsets[4] = 7;
+      source.sliderPitchOffsets[15] = -12;
+      source.storedGateValues[2] = 0.4;
+      source.gateMuted[2] = true;
+      source.velocityBoostEnabled[9] = true;
+      source.scale.setPreset(1, 5);
+
+      final ByteBuffer buffer = ByteBuffer.allocate(ArpStepState.STATE_BYTES);
+      source.writeState(buffer);
+      assertEquals(ArpStepState.STATE_BYTES, buffer.position());
+
+      final ArpStepState target = new ArpStepState();
+      target.readState(ByteBuffer.wrap(buffer.array()));
+      assertEquals(7, target.knobPitchOffsets[4]);
+      assertEquals(-12, target.sliderPitchOffsets[15]);
+      assertEquals(0.4, target.storedGateValues[2]);
+      assertTrue(target.gateMuted[2]);
+      assertTrue(target.velocityBoostEnabled[9]);
+      assertFalse(target.velocityBoostEnabled[8]);
+      assertEquals(1, target.scale.getPreset());
+      assertEquals(5, target.scale.getRoot());
+      assertEquals(source.scale.getMask(), target.scale.getMask());
+      // Quantize mutes are checked against the device again once the state is shown.
+      assertTrue(target.quantizePending[0]);
+   }
+}
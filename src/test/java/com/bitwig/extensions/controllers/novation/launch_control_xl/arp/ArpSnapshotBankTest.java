@@ -0,0 +1,108 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.arp;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ArpSnapshotBankTest {
+
+   private static final int BATCH_SIZE = 24;
+
+   @Test
+   void recallIsSplitIntoBatches() {
+      final ArpSnapshotBank bank = new ArpSnapshotBank();
+      store(bank, 2, 0.25);
+      final double[] device = new double[ArpSnapshotBank.PARAMETERS];
+
+      assertTrue(bank.beginRecall(2));
+      int ticks = 1;
+      while (bank.recallNext((parameter, value) -> device[parameter] = value, BATCH_SIZE)) {
+         ticks++;
+      }
+
+      assertEquals((ArpSnapshotBank.PARAMETERS + BATCH_SIZE - 1) / BATCH_SIZE, ticks);
+      for (int parameter = 0; parameter < ArpSnapshotBank.PARAMETERS; parameter++) {
+         assertEquals(0.25, device[parameter]);
+      }
+      assertFalse(bank.isRecalling());
+   }
+
+   @Test
+   void emptySlotIsNotRecalled() {
+      final ArpSnapshotBank bank = new ArpSnapshotBank();
+
+      assertFalse(bank.beginRecall(0));
+      assertFalse(bank.beginRecall(ArpSnapshotBank.SLOTS));
+   }
+
+   @Test
+   void morphInterpolatesAndSwitchesDiscreteValuesHalfway() {
+      final ArpSnapshotBank bank = new ArpSnapshotBank();
+      store(bank, 0, 0.0);
+      store(bank, 1, 1.0);
+      bank.set(1, ArpSnapshotBank.MODE, 0.0);
+      bank.markStored(1);
+      bank.setMorphFrom(0);
+      bank.setMorphTo(1);
+      final double[] device = new double[ArpSnapshotBank.PARAMETERS];
+      final int[] writes = new int[1];
+
+      bank.morph(0.25, (parameter, value) -> {
+         device[parameter] = value;
+         writes[0]++;
+      });
+
+      assertEquals(0.25, device[ArpSnapshotBank.GATE + 3]);
+      assertEquals(0.25, device[ArpSnapshotBank.GLOBAL_VELOCITY]);
+      assertEquals(0.0, device[ArpSnapshotBank.SKIP + 3]);
+      assertEquals(0.0, device[ArpSnapshotBank.STEP_COUNT]);
+      // MODE is equal in both snapshots, so it is not written at all.
+      assertEquals(ArpSnapshotBank.PARAMETERS - 1, writes[0]);
+
+      bank.morph(0.75, (parameter, value) -> device[parameter] = value);
+      assertEquals(1.0, device[ArpSnapshotBank.SKIP + 3]);
+   }
+
+   @Test
+   void repeatedRecallsWriteBoundedBatches() {
+      final ArpSnapshotBank bank = new ArpSnapshotBank();
+      for (int slot = 0; slot < ArpSnapshotBank.SLOTS; slot++) {
+         store(bank, slot, slot / 8.0);
+      }
+      final double[] device = new double[ArpSnapshotBank.PARAMETERS];
+      final int[] batch = new int[1];
+      final ArpSnapshotBank.Writer writer = (parameter, value) -> {
+         device[parameter] = value;
+         batch[0]++;
+      };
+      final int expectedTicks = (ArpSnapshotBank.PARAMETERS + BATCH_SIZE - 1) / BATCH_SIZE;
+
+      for (int i = 0; i < 100; i++) {
+         final int slot = i % ArpSnapshotBank.SLOTS;
+         assertTrue(bank.beginRecall(slot));
+         int ticks = 0;
+         int writes = 0;
+         boolean more;
+         do {
+            batch[0] = 0;
+            more = bank.recallNext(writer, BATCH_SIZE);
+            ticks++;
+            writes += batch[0];
+            assertTrue(batch[0] <= BATCH_SIZE, "batch of " + batch[0]);
+         } while (more);
+
+         assertEquals(expectedTicks, ticks);
+         assertEquals(ArpSnapshotBank.PARAMETERS, writes);
+         assertEquals(slot / 8.0, device[ArpSnapshotBank.PARAMETERS - 1]);
+      }
+   }
+
+   private static void store(final ArpSnapshotBank bank, final int slot, final double value) {
+      for (int parameter = 0; parameter < ArpSnapshotBank.PARAMETERS; parameter++) {
+         bank.set(slot, parameter, value);
+      }
+      bank.markStored(slot);
+   }
+}
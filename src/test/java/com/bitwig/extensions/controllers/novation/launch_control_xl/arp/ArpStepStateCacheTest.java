@@ -0,0 +1,77 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.arp;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ArpStepStateCacheTest {
+
+   @Test
+   void sameDeviceGetsSameState() {
+      final ArpStepStateCache cache = new ArpStepStateCache(4);
+      final int entry = cache.leastRecentlyUsed();
+      final ArpStepState first = cache.allocate(entry, ArpStepStateCache.key(2, 1));
+      first.gateMuted[3] = true;
+      cache.allocate(cache.leastRecentlyUsed(), ArpStepStateCache.key(5, 0));
+
+      final int again = cache.find(ArpStepStateCache.key(2, 1));
+      assertEquals(entry, again);
+      assertSame(first, cache.state(again));
+      assertTrue(cache.state(again).gateMuted[3]);
+   }
+
+   @Test
+   void reusesLeastRecentlyUsed() {
+      final ArpStepStateCache cache = new ArpStepStateCache(2);
+      final int a = cache.leastRecentlyUsed();
+      cache.allocate(a, ArpStepStateCache.key(0, 0));
+      final int b = cache.leastRecentlyUsed();
+      cache.allocate(b, ArpStepStateCache.key(1, 0));
+      cache.touch(a);
+
+      assertEquals(b, cache.leastRecentlyUsed());
+      final int generation = cache.generation(b);
+      cache.allocate(b, ArpStepStateCache.key(2, 0));
+      assertEquals(2, cache.size());
+      assertEquals(-1, cache.find(ArpStepStateCache.key(1, 0)));
+      assertNotEquals(generation, cache.generation(b));
+   }
+
+   @Test
+   void movedDeviceKeepsItsState() {
+      final ArpStepStateCache cache = new ArpStepStateCache(4);
+      final int entry = cache.leastRecentlyUsed();
+      final ArpStepState state = cache.allocate(entry, ArpStepStateCache.key(3, 0));
+      final int generation = cache.generation(entry);
+
+      // A device inserted in front of it moves the arp to position 1.
+      cache.move(entry, ArpStepStateCache.key(3, 1));
+      assertEquals(-1, cache.find(ArpStepStateCache.key(3, 0)));
+      assertEquals(entry, cache.find(ArpStepStateCache.key(3, 1)));
+      assertSame(state, cache.state(entry));
+      assertEquals(generation, cache.generation(entry));
+   }
+
+   @Test
+   void releasedEntryIsReusedFirst() {
+      final ArpStepStateCache cache = new ArpStepStateCache(3);
+      for (int i = 0; i < 3; i++) {
+         cache.allocate(cache.leastRecentlyUsed(), ArpStepStateCache.key(i, 0));
+      }
+      final int entry = cache.find(ArpStepStateCache.key(2, 0));
+      cache.release(entry);
+
+      assertNull(cache.state(entry));
+      assertEquals(2, cache.size());
+      assertEquals(entry, cache.leastRecentlyUsed());
+   }
+
+   @Test
+   void trackAndDevicePositionDoNotCollide() {
+      assertTrue(ArpStepStateCache.key(1, 0) != ArpStepStateCache.key(0, 1));
+   }
+}
@@ -0,0 +1,51 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.arp;
+
+import com.bitwig.extension.controller.api.ControllerHost;
+import com.bitwig.extension.controller.api.Parameter;
+import com.bitwig.extension.controller.api.SettableRangedValue;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ParameterWriteBufferTest {
+
+   @Test
+   void sendsOnlyLastValuePerFlush() {
+      final ControllerHost host = mock(ControllerHost.class);
+      final SettableRangedValue value = mock(SettableRangedValue.class);
+      final Parameter parameter = mock(Parameter.class);
+      when(parameter.value()).thenReturn(value);
+      final ParameterWriteBuffer buffer = new ParameterWriteBuffer(host, 4);
+      final int id = buffer.register(parameter);
+
+      buffer.set(id, 0.2);
+      buffer.set(id, 0.0);
+      buffer.set(id, 0.7);
+      verify(value, never()).set(0.7);
+      assertEquals(0.7, buffer.get(id));
+
+      buffer.flush();
+      buffer.flush();
+
+      verify(value, times(1)).set(0.7);
+      verify(value, never()).set(0.2);
+      verify(host, times(1)).requestFlush();
+      assertEquals(2, buffer.getSuppressedWrites());
+   }
+
+   @Test
+   void readsReportedValueWhenNothingIsPending() {
+      final SettableRangedValue value = mock(SettableRangedValue.class);
+      when(value.get()).thenReturn(0.4);
+      final Parameter parameter = mock(Parameter.class);
+      when(parameter.value()).thenReturn(value);
+      final ParameterWriteBuffer buffer = new ParameterWriteBuffer(mock(ControllerHost.class), 1);
+
+      assertEquals(0.4, buffer.get(buffer.register(parameter)));
+   }
+}
@@ -0,0 +1,91 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.arp;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScaleQuantizerTest {
+
+   private static final int C_MAJOR = 0b1010_1011_0101;
+
+   @Test
+   void fullScaleKeepsEveryNote() {
+      final ScaleQuantizer scale = new ScaleQuantizer();
+      for (int note = ScaleQuantizer.MIN_NOTE; note <= ScaleQuantizer.MAX_NOTE; note++) {
+         assertTrue(scale.allows(note));
+         assertEquals(note, scale.nearest(note));
+      }
+   }
+
+   @Test
+   void snapsToNearestScaleNote() {
+      final ScaleQuantizer scale = new ScaleQuantizer();
+      scale.setMask(C_MAJOR);
+
+      assertFalse(scale.allows(1));
+      assertFalse(scale.allows(-11));
+      assertEquals(2, scale.nearest(1));
+      assertEquals(7, scale.nearest(6));
+      assertEquals(-13, scale.nearest(-14));
+      assertEquals(11, scale.nearest(11));
+   }
+
+   @Test
+   void staysInRange() {
+      final ScaleQuantizer scale = new ScaleQuantizer();
+      scale.setMask(1 << 11);
+
+      assertEquals(23, scale.nearest(24));
+      assertEquals(-13, scale.nearest(-24));
+      assertEquals(23, scale.nearest(100));
+   }
+
+   @Test
+   void emptyScaleLeavesNotes() {
+      final ScaleQuantizer scale = new ScaleQuantizer();
+      scale.setMask(0);
+
+      assertEquals(7, scale.nearest(7));
+      assertFalse(scale.allows(7));
+   }
+
+   @Test
+   void toggleUpdatesTable() {
+      final ScaleQuantizer scale = new ScaleQuantizer();
+      scale.toggleNote(4);
+
+      assertFalse(scale.isNoteSet(4));
+      assertEquals(5, scale.nearest(4));
+      scale.toggleNote(4);
+      assertEquals(4, scale.nearest(4));
+   }
+
+   @Test
+   void presetsFollowTheScaleLibrary() {
+      final ScaleQuantizer scale = new ScaleQuantizer();
+      final int major = 1;
+      assertEquals("Ionan (Major)", ScaleQuantizer.getPresetName(major));
+
+      scale.setPreset(major, 0);
+      assertEquals(C_MAJOR, scale.getMask());
+
+      scale.setPreset(major, 2);
+      assertEquals(2, scale.getRoot());
+      assertTrue(scale.allows(6));
+      assertFalse(scale.allows(5));
+      assertEquals(6, scale.nearest(5));
+   }
+
+   @Test
+   void rootWrapsAndToggleLeavesPreset() {
+      final ScaleQuantizer scale = new ScaleQuantizer();
+      scale.setPreset(1, -1);
+      assertEquals(11, scale.getRoot());
+
+      scale.toggleNote(0);
+      assertEquals(ScaleQuantizer.CUSTOM, scale.getPreset());
+      assertEquals("Custom", ScaleQuantizer.getPresetName(scale.getPreset()));
+   }
+}
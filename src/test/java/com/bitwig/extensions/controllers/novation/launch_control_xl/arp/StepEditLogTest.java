@@ -0,0 +1,151 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.arp;
+
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StepEditLogTest {
+
+   private final double[] device = new double[ArpSnapshotBank.PARAMETERS];
+   private final double[] deviceRaw = new double[ArpSnapshotBank.PARAMETERS];
+
+   {
+      Arrays.fill(device, ArpSnapshotBank.GATE, ArpSnapshotBank.TRANSPOSE, 0.5);
+   }
+
+   private final StepEditLog.Target target = new StepEditLog.Target() {
+      @Override
+      public void set(final int parameter, final double value) {
+         device[parameter] = value;
+      }
+
+      @Override
+      public void setRaw(final int parameter, final double raw) {
+         deviceRaw[parameter] = raw;
+      }
+   };
+
+   @Test
+   void undoAndRedoWholeGesture() {
+      final StepEditLog log = new StepEditLog(16);
+      log.beginGesture();
+      write(log, ArpSnapshotBank.GATE, 0.0);
+      write(log, ArpSnapshotBank.GATE + 1, 0.0);
+      log.endGesture();
+      log.beginGesture();
+      write(log, ArpSnapshotBank.SKIP, 1.0);
+      log.endGesture();
+
+      assertTrue(log.undo(target));
+      assertEquals(0.0, device[ArpSnapshotBank.SKIP]);
+      assertEquals(0.0, device[ArpSnapshotBank.GATE]);
+
+      assertTrue(log.undo(target));
+      assertEquals(0.5, device[ArpSnapshotBank.GATE]);
+      assertEquals(0.5, device[ArpSnapshotBank.GATE + 1]);
+      assertFalse(log.undo(target));
+
+      assertTrue(log.redo(target));
+      assertEquals(0.0, device[ArpSnapshotBank.GATE + 1]);
+      assertEquals(0.0, device[ArpSnapshotBank.SKIP]);
+   }
+
+   @Test
+   void writesOutsideGestureAreNotLogged() {
+      final StepEditLog log = new StepEditLog(16);
+      write(log, ArpSnapshotBank.GATE, 0.0);
+
+      assertEquals(0, log.size());
+      assertFalse(log.canUndo());
+   }
+
+   @Test
+   void parameterWrittenTwiceKeepsFirstOldValue() {
+      final StepEditLog log = new StepEditLog(16);
+      log.beginGesture();
+      write(log, ArpSnapshotBank.GATE, 0.0);
+      write(log, ArpSnapshotBank.GATE, 0.75);
+      log.endGesture();
+
+      assertEquals(1, log.size());
+      log.undo(target);
+      assertEquals(0.5, device[ArpSnapshotBank.GATE]);
+      log.redo(target);
+      assertEquals(0.75, device[ArpSnapshotBank.GATE]);
+   }
+
+   @Test
+   void rawValuesAreWrittenRaw() {
+      final StepEditLog log = new StepEditLog(16);
+      deviceRaw[ArpSnapshotBank.STEP_COUNT] = 16;
+      log.beginGesture();
+      log.recordRaw(ArpSnapshotBank.STEP_COUNT, 16, 4);
+      deviceRaw[ArpSnapshotBank.STEP_COUNT] = 4;
+      log.endGesture();
+
+      log.undo(target);
+      assertEquals(16, deviceRaw[ArpSnapshotBank.STEP_COUNT]);
+      log.redo(target);
+      assertEquals(4, deviceRaw[ArpSnapshotBank.STEP_COUNT]);
+      assertEquals(0.0, device[ArpSnapshotBank.STEP_COUNT]);
+   }
+
+   @Test
+   void redoWritesTheLoggedValue() {
+      final StepEditLog log = new StepEditLog(16);
+      log.beginGesture();
+      write(log, ArpSnapshotBank.GATE + 12, 0.0);
+      log.endGesture();
+      log.undo(target);
+      // A hidden step page is not observed, so the device may report an outdated value.
+      device[ArpSnapshotBank.GATE + 12] = 0.9;
+
+      log.redo(target);
+      assertEquals(0.0, device[ArpSnapshotBank.GATE + 12]);
+   }
+
+   @Test
+   void newEditDiscardsRedo() {
+      final StepEditLog log = new StepEditLog(16);
+      log.beginGesture();
+      write(log, ArpSnapshotBank.GATE, 0.0);
+      log.endGesture();
+      log.undo(target);
+      log.beginGesture();
+      write(log, ArpSnapshotBank.SKIP, 1.0);
+      log.endGesture();
+
+      assertFalse(log.canRedo());
+      assertEquals(1, log.size());
+   }
+
+   @Test
+   void fullLogDropsOldestGesture() {
+      final StepEditLog log = new StepEditLog(4);
+      log.beginGesture();
+      write(log, ArpSnapshotBank.GATE, 0.0);
+      write(log, ArpSnapshotBank.GATE + 1, 0.0);
+      log.endGesture();
+      for (int i = 0; i < 3; i++) {
+         log.beginGesture();
+         write(log, ArpSnapshotBank.VELOCITY + i, 1.0);
+         log.endGesture();
+      }
+
+      assertEquals(3, log.size());
+      assertTrue(log.undo(target));
+      assertTrue(log.undo(target));
+      assertTrue(log.undo(target));
+      assertFalse(log.undo(target));
+      assertEquals(0.0, device[ArpSnapshotBank.GATE]);
+   }
+
+   private void write(final StepEditLog log, final int parameter, final double value) {
+      log.record(parameter, device[parameter], value);
+      device[parameter] = value;
+   }
+}
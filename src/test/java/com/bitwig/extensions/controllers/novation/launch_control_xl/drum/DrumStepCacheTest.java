@@ -0,0 +1,57 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.drum;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+class DrumStepCacheTest {
+
+   @Test
+   void pagesAreSlicedFromTheStepBits() {
+      final DrumStepCache cache = new DrumStepCache();
+      cache.setStepState(0, DrumStepCache.STATE_NOTE_START);
+      cache.setStepState(4, DrumStepCache.STATE_NOTE_START);
+      cache.setStepState(17, DrumStepCache.STATE_NOTE_START);
+      cache.setStepState(63, DrumStepCache.STATE_NOTE_START);
+
+      assertEquals(0b10001, cache.getPage(0));
+      assertEquals(0b10, cache.getPage(1));
+      assertEquals(0, cache.getPage(2));
+      assertEquals(0x8000, cache.getPage(3));
+   }
+
+   @Test
+   void sustainedOrEmptyStepClearsTheBit() {
+      final DrumStepCache cache = new DrumStepCache();
+      cache.setStepState(2, DrumStepCache.STATE_NOTE_START);
+      cache.setStepState(3, DrumStepCache.STATE_NOTE_START);
+
+      cache.setStepState(2, 0);
+      cache.setStepState(3, 1);
+
+      assertFalse(cache.isSet(2));
+      assertFalse(cache.isSet(3));
+   }
+
+   @Test
+   void velocityIsReportedForSetStepsOnly() {
+      final DrumStepCache cache = new DrumStepCache();
+      cache.setVelocity(5, 1.0);
+      assertEquals(0, cache.getVelocity(5));
+
+      cache.setStepState(5, DrumStepCache.STATE_NOTE_START);
+      assertEquals(127, cache.getVelocity(5));
+   }
+
+   @Test
+   void outOfRangeChangesAreIgnored() {
+      final DrumStepCache cache = new DrumStepCache();
+      cache.setStepState(DrumStepCache.STEPS, DrumStepCache.STATE_NOTE_START);
+      cache.setStepState(-1, DrumStepCache.STATE_NOTE_START);
+
+      assertFalse(cache.isSet(DrumStepCache.STEPS));
+      assertEquals(0, cache.getPage(0));
+      assertEquals(0, cache.getPage(DrumStepCache.PAGES));
+   }
+}
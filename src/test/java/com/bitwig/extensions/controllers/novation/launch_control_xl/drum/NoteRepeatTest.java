@@ -0,0 +1,205 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.drum;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NoteRepeatTest {
+
+   private static final long MS = 1_000_000L;
+   /** 120 BPM. */
+   private static final long BEAT = 500 * MS;
+
+   private long now = 1_000 * MS;
+   private final Random random = new Random(7);
+   /** Host lateness of a scheduled task: at least {@code minLateness}, plus up to {@code spread}. */
+   private long minLateness = MS;
+   private long spread = 3 * MS;
+   private final List<long[]> taskTimes = new ArrayList<>();
+   private final List<Runnable> tasks = new ArrayList<>();
+   private final List<Long> noteOns = new ArrayList<>();
+   private final List<Long> noteOffs = new ArrayList<>();
+
+   private final NoteRepeat repeat = new NoteRepeat((callback, delayMs) -> {
+      final long lateness = minLateness + (spread > 0 ? (long) (random.nextDouble() * spread) : 0);
+      taskTimes.add(new long[] {now + delayMs * MS + lateness});
+      tasks.add(callback);
+   }, () -> now, new NoteRepeat.Output() {
+      @Override
+      public void noteOn(final int key, final int velocity) {
+         noteOns.add(now);
+      }
+
+      @Override
+      public void noteOff(final int key) {
+         noteOffs.add(now);
+      }
+   });
+
+   @Test
+   void repeatsStayOnTheTransportGridDespiteHostJitter() {
+      repeat.setTempo(120);
+      repeat.setPlaying(true);
+      final long start = now;
+      repeat.syncPosition(0);
+      repeat.start(36, 100, 0.25);
+      for (int i = 0; i < 1_500; i++) {
+         // Position reports every 20 ms, a little off themselves.
+         run(20 * MS);
+         repeat.syncPosition((now - start + (long) ((random.nextDouble() - 0.5) * MS)) / (double) BEAT);
+      }
+
+      final double[] report = gridError(start, BEAT / 4, 10);
+      assertTrue(report[0] > 200, "notes: " + report[0]);
+      assertTrue(report[1] < 1.0, "mean error " + report[1] + " ms");
+      // Waking at the deadline would put every note 1-5 ms late; what is left is the spread of the jitter.
+      assertTrue(report[2] < 3.0, "max error " + report[2] + " ms");
+      assertTrue(Math.abs(report[3]) < 0.5, "drift " + report[3] + " ms");
+   }
+
+   @Test
+   void lookaheadLearnsTheHostLateness() {
+      minLateness = 4 * MS;
+      spread = 0;
+      repeat.setTempo(120);
+      repeat.setPlaying(true);
+      final long start = now;
+      repeat.syncPosition(0);
+      repeat.start(36, 100, 0.125);
+      run(2_000 * MS);
+
+      final double[] report = gridError(start, BEAT / 8, 20);
+      assertTrue(repeat.getLatenessNanos() > 3 * MS, "lateness " + repeat.getLatenessNanos());
+      assertTrue(report[2] < 1.0, "max error once settled " + report[2] + " ms");
+   }
+
+   @Test
+   void stoppedTransportStartsTheGridAtThePress() {
+      spread = 0;
+      minLateness = 0;
+      repeat.setTempo(120);
+      final long start = now;
+      repeat.start(36, 100, 0.5);
+
+      assertEquals(List.of(start), noteOns);
+      run(BEAT + 10 * MS);
+      assertEquals(3, noteOns.size());
+      assertEquals(start + 2 * (BEAT / 2), noteOns.get(2), MS);
+   }
+
+   @Test
+   void gateReleasesHalfwayThroughTheStep() {
+      spread = 0;
+      minLateness = 0;
+      repeat.setTempo(120);
+      repeat.start(36, 100, 1);
+      run(BEAT - 10 * MS);
+
+      assertEquals(1, noteOffs.size());
+      assertEquals(noteOns.get(0) + BEAT / 2, noteOffs.get(0), MS);
+   }
+
+   @Test
+   void stopReleasesTheNoteAndEndsTheRepeat() {
+      repeat.setTempo(120);
+      repeat.start(36, 100, 0.25);
+      run(60 * MS);
+      repeat.stop();
+
+      assertFalse(repeat.isActive());
+      assertEquals(1, noteOns.size());
+      assertEquals(1, noteOffs.size());
+      run(BEAT);
+      assertEquals(1, noteOns.size());
+   }
+
+   @Test
+   void locateMovesTheGridAtOnce() {
+      spread = 0;
+      minLateness = 0;
+      repeat.setTempo(120);
+      repeat.setPlaying(true);
+      repeat.syncPosition(0);
+      repeat.start(36, 100, 1);
+      run(100 * MS);
+      // Jump to 0.1 beat before beat 8: the next note is 50 ms away rather than 400 ms.
+      final long locate = now;
+      repeat.syncPosition(7.9);
+      run(60 * MS);
+
+      assertEquals(locate + BEAT / 10, noteOns.get(noteOns.size() - 1), MS);
+   }
+
+   @Test
+   void lateHostDropsMissedStepsInsteadOfBunching() {
+      spread = 0;
+      minLateness = 0;
+      repeat.setTempo(120);
+      repeat.start(36, 100, 0.25);
+      final long start = now;
+      // The host is stuck for 3 steps.
+      now += 3 * BEAT / 4 + 20 * MS;
+      runDue();
+
+      assertEquals(2, noteOns.size());
+      run(BEAT / 4);
+      assertEquals(start + 4 * BEAT / 4, noteOns.get(2), MS);
+   }
+
+   /** @return notes measured, mean and max absolute error (ms) and the mean error of the last 20 minus the first 20 */
+   private double[] gridError(final long start, final long step, final int skip) {
+      final int count = noteOns.size() - skip;
+      double sum = 0;
+      double max = 0;
+      final double[] errors = new double[count];
+      for (int i = 0; i < count; i++) {
+         final long time = noteOns.get(skip + i);
+         final long ideal = start + Math.round((time - start) / (double) step) * step;
+         errors[i] = (time - ideal) / (double) MS;
+         sum += Math.abs(errors[i]);
+         max = Math.max(max, Math.abs(errors[i]));
+      }
+      final int window = Math.min(20, count / 2);
+      double first = 0;
+      double last = 0;
+      for (int i = 0; i < window; i++) {
+         first += errors[i];
+         last += errors[count - 1 - i];
+      }
+      return new double[] {count, sum / count, max, (last - first) / window};
+   }
+
+   private void run(final long duration) {
+      final long end = now + duration;
+      while (true) {
+         final int next = nextTask();
+         if (next < 0 || taskTimes.get(next)[0] > end) {
+            break;
+         }
+         now = Math.max(now, taskTimes.get(next)[0]);
+         taskTimes.remove(next);
+         tasks.remove(next).run();
+      }
+      now = end;
+   }
+
+   private void runDue() {
+      run(0);
+   }
+
+   private int nextTask() {
+      int next = -1;
+      for (int i = 0; i < taskTimes.size(); i++) {
+         if (next < 0 || taskTimes.get(i)[0] < taskTimes.get(next)[0]) {
+            next = i;
+         }
+      }
+      return next;
+   }
+}
@@ -0,0 +1,72 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.drum;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PadActivityTest {
+
+   @Test
+   void noteFadesFromBrightToDimToOff() {
+      final PadActivity activity = new PadActivity(8);
+      activity.trigger(2);
+      assertEquals(PadActivity.OFF, activity.getStage(2));
+
+      assertTrue(activity.tick());
+      assertEquals(PadActivity.BRIGHT, activity.getStage(2));
+      for (int i = 1; i < PadActivity.BRIGHT_TICKS; i++) {
+         assertFalse(activity.tick());
+      }
+      assertTrue(activity.tick());
+      assertEquals(PadActivity.DIM, activity.getStage(2));
+      for (int i = 1; i < PadActivity.DIM_TICKS; i++) {
+         activity.tick();
+      }
+      assertTrue(activity.tick());
+      assertEquals(PadActivity.OFF, activity.getStage(2));
+      assertFalse(activity.isActive());
+   }
+
+   @Test
+   void notesBetweenTicksMakeOneChange() {
+      final PadActivity activity = new PadActivity(8);
+      for (int i = 0; i < 500; i++) {
+         activity.trigger(i % 8);
+      }
+
+      assertTrue(activity.tick());
+      for (int pad = 0; pad < 8; pad++) {
+         assertEquals(PadActivity.BRIGHT, activity.getStage(pad));
+      }
+      // Retriggering a bright pad keeps it bright without a new frame.
+      activity.trigger(0);
+      assertFalse(activity.tick());
+   }
+
+   @Test
+   void retriggerWhileDimBrightensAgain() {
+      final PadActivity activity = new PadActivity(1);
+      activity.trigger(0);
+      for (int i = 0; i <= PadActivity.BRIGHT_TICKS; i++) {
+         activity.tick();
+      }
+      assertEquals(PadActivity.DIM, activity.getStage(0));
+
+      activity.trigger(0);
+      assertTrue(activity.tick());
+      assertEquals(PadActivity.BRIGHT, activity.getStage(0));
+   }
+
+   @Test
+   void clearTurnsEverythingOff() {
+      final PadActivity activity = new PadActivity(4);
+      activity.trigger(1);
+      activity.tick();
+      activity.clear();
+
+      assertEquals(PadActivity.OFF, activity.getStage(1));
+      assertFalse(activity.isActive());
+   }
+}
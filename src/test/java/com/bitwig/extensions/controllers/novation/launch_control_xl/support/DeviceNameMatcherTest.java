@@ -0,0 +1,32 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.support;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DeviceNameMatcherTest {
+
+   @Test
+   void matchesIgnoringCase() {
+      final DeviceNameMatcher matcher = new DeviceNameMatcher("drum machine");
+      assertTrue(matcher.matches("Drum Machine"));
+      assertTrue(matcher.matches("My DRUM MACHINE 2"));
+      assertTrue(matcher.matches("drum machine"));
+   }
+
+   @Test
+   void rejectsPartialOrMissingNames() {
+      final DeviceNameMatcher matcher = new DeviceNameMatcher("arpeggiator");
+      assertFalse(matcher.matches("Arpeggiat"));
+      assertFalse(matcher.matches("Note Echo"));
+      assertFalse(matcher.matches(""));
+      assertFalse(matcher.matches(null));
+   }
+
+   @Test
+   void emptyFragmentMatchesAnything() {
+      assertTrue(new DeviceNameMatcher(null).matches("Polymer"));
+      assertTrue(new DeviceNameMatcher("").matches(null));
+   }
+}
@@ -0,0 +1,25 @@
+package com.bitwig.extensions.controllers.novation.launch_control_xl.support;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RoleMatcherTest {
+
+   @Test
+   void identityMatcherIgnoresName() {
+      final RoleMatcher arp = RoleMatcher.identity(DeviceIdentity.ARPEGGIATOR);
+      assertTrue(arp.matches(DeviceIdentity.ARPEGGIATOR, "My Renamed Arp"));
+      assertTrue(arp.matches(DeviceIdentity.ARPEGGIATOR | DeviceIdentity.DRUM_MACHINE, null));
+      assertFalse(arp.matches(DeviceIdentity.DRUM_MACHINE, "Arpeggiator"));
+      assertFalse(arp.matches(0, "Arpeggiator"));
+   }
+
+   @Test
+   void nameMatcherIgnoresIdentity() {
+      final RoleMatcher sampler = RoleMatcher.name("sampler");
+      assertTrue(sampler.matches(0, "Sampler"));
+      assertFalse(sampler.matches(DeviceIdentity.DRUM_MACHINE, "Drum Machine"));
+   }
+}
@@ -0,0 +1,170 @@
+package com.bitwig.extensions.framework.time;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class TimingWheelTest {
+
+   private static final long MS = 1_000_000L;
+
+   private long now;
+   private Runnable hostTask;
+   private long hostDueAt;
+   private int hostWakeUps;
+   private final TimingWheel wheel = new TimingWheel((callback, delayMs) -> {
+      hostTask = callback;
+      hostDueAt = now + delayMs * MS;
+   }, () -> now, 5, 8);
+
+   @Test
+   void runsTaskAfterDelay() {
+      final List<String> log = new ArrayList<>();
+      wheel.schedule(() -> log.add("a"), 12);
+
+      advance(10);
+      assertTrue(log.isEmpty());
+      advance(5);
+      assertEquals(List.of("a"), log);
+      assertEquals(0, wheel.size());
+   }
+
+   @Test
+   void runsTasksOfOneTickTogetherInOrder() {
+      final List<String> log = new ArrayList<>();
+      wheel.schedule(() -> log.add("a"), 6);
+      wheel.schedule(() -> log.add("b"), 9);
+      wheel.schedule(() -> log.add("c"), 30);
+
+      advance(10);
+      assertEquals(List.of("a", "b"), log);
+   }
+
+   @Test
+   void cancelledTaskDoesNotRun() {
+      final List<String> log = new ArrayList<>();
+      final TimingWheel.Task task = wheel.schedule(() -> log.add("a"), 10);
+      wheel.cancel(task);
+
+      advance(20);
+      assertTrue(log.isEmpty());
+      assertEquals(0, wheel.size());
+   }
+
+   @Test
+   void taskBeyondOneTurnWaitsForItsRound() {
+      final List<String> log = new ArrayList<>();
+      // 8 slots of 5 ms: one turn is 40 ms.
+      wheel.schedule(() -> log.add("a"), 100);
+
+      advance(50);
+      assertTrue(log.isEmpty());
+      advance(50);
+      assertEquals(List.of("a"), log);
+   }
+
+   @Test
+   void repeatingTaskKeepsItsPeriod() {
+      final int[] runs = new int[1];
+      final TimingWheel.Task task = wheel.scheduleRepeating(() -> runs[0]++, 10, 10);
+
+      for (int i = 0; i < 10; i++) {
+         advance(5);
+      }
+      assertEquals(5, runs[0]);
+      wheel.cancel(task);
+      advance(50);
+      assertEquals(5, runs[0]);
+   }
+
+   @Test
+   void lateHostCatchesUpMissedTicks() {
+      final List<String> log = new ArrayList<>();
+      wheel.schedule(() -> log.add("a"), 5);
+      wheel.schedule(() -> log.add("b"), 15);
+
+      now += 30 * MS;
+      runHostTask();
+      assertEquals(List.of("a", "b"), log);
+   }
+
+   @Test
+   void queuedDelayEventIsProcessedOnce() {
+      final int[] runs = new int[1];
+      final TimedDelayEvent event = new TimedDelayEvent(() -> runs[0]++, 0);
+
+      wheel.queue(event);
+      advance(10);
+
+      assertEquals(1, runs[0]);
+      assertTrue(event.isCompleted());
+      assertEquals(0, wheel.size());
+   }
+
+   @Test
+   void wakesOnlyForTicksWithTasks() {
+      final List<String> log = new ArrayList<>();
+      wheel.schedule(() -> log.add("a"), 20);
+      wheel.schedule(() -> log.add("b"), 35);
+
+      advance(40);
+      assertEquals(List.of("a", "b"), log);
+      assertEquals(2, hostWakeUps);
+   }
+
+   @Test
+   void idlePeriodIsNotReplayed() {
+      final int[] runs = new int[1];
+      wheel.schedule(() -> runs[0]++, 5);
+      advance(10);
+      assertEquals(1, runs[0]);
+
+      // Idle for many turns of the wheel, then a task due at the next tick.
+      now += 1_000 * MS;
+      wheel.schedule(() -> runs[0]++, 5);
+      assertEquals(now + 5 * MS, hostDueAt);
+      advance(5);
+      assertEquals(2, runs[0]);
+      assertEquals(2, hostWakeUps);
+   }
+
+   @Test
+   void earlyHostWakeUpIsScheduledAgain() {
+      final List<String> log = new ArrayList<>();
+      wheel.schedule(() -> log.add("a"), 20);
+
+      // The host calls back 3 ms before the task's tick.
+      now = hostDueAt - 3 * MS;
+      runHostTask();
+      assertTrue(log.isEmpty());
+      assertNotNull(hostTask);
+      assertEquals(now + 3 * MS, hostDueAt);
+
+      advance(5);
+      assertEquals(List.of("a"), log);
+      wheel.schedule(() -> log.add("b"), 10);
+      advance(15);
+      assertEquals(List.of("a", "b"), log);
+   }
+
+   private void advance(final long ms) {
+      final long end = now + ms * MS;
+      while (hostTask != null && hostDueAt <= end) {
+         now = Math.max(now, hostDueAt);
+         runHostTask();
+      }
+      now = end;
+   }
+
+   private void runHostTask() {
+      final Runnable task = hostTask;
+      hostTask = null;
+      hostWakeUps++;
+      task.run();
+   }
+}